@@ -0,0 +1,83 @@
+package com.example.productsearch.service;
+
+import com.example.productsearch.config.ElasticsearchConfig;
+import com.example.productsearch.config.SearchCacheConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.core.env.MapPropertySource;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The production search and ingestion beans wired by Spring against an {@link EsStubServer}, so
+ * benchmarks exercise the same client configuration, serialization and instrumentation as the
+ * application. The result cache is disabled so every call reaches the (stubbed) cluster, and
+ * change detection is off so every ingestion run writes all of its documents.
+ */
+final class BenchmarkEnvironment implements AutoCloseable {
+
+    private final EsStubServer stub;
+    private final AnnotationConfigApplicationContext context;
+
+    private BenchmarkEnvironment(EsStubServer stub, AnnotationConfigApplicationContext context) {
+        this.stub = stub;
+        this.context = context;
+    }
+
+    static BenchmarkEnvironment start() throws IOException {
+        return start(Map.of());
+    }
+
+    static BenchmarkEnvironment start(Map<String, Object> overrides) throws IOException {
+        EsStubServer stub = new EsStubServer();
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("elasticsearch.uris", stub.uri());
+        properties.put("search.cache.enabled", "false");
+        properties.put("search.page.max-size", "10000");
+        properties.put("search.log.sample-rate", "0");
+        properties.put("ingest.change-detection.enabled", "false");
+        properties.putAll(overrides);
+
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources()
+                .addFirst(new MapPropertySource("benchmark", properties));
+        // Comma-separated @Value lists need the conversion service Spring Boot would install
+        context.getBeanFactory().setConversionService(DefaultConversionService.getSharedInstance());
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.register(
+                ElasticsearchConfig.class,
+                SearchCacheConfig.class,
+                IndexGeneration.class,
+                SearchCoalescer.class,
+                SearchMetrics.class,
+                AdaptiveConcurrencyLimiter.class,
+                InferenceCircuitBreaker.class,
+                ProductChangeDetector.class,
+                SuggestionService.class,
+                ElserInferenceService.class,
+                ProductService.class,
+                ProductIngestionService.class
+        );
+        context.refresh();
+        return new BenchmarkEnvironment(stub, context);
+    }
+
+    EsStubServer stub() {
+        return stub;
+    }
+
+    <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    @Override
+    public void close() {
+        context.close();
+        stub.close();
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.json.JsonpDeserializer;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import com.example.productsearch.model.Product;
+import jakarta.json.stream.JsonParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CPU-bound pieces of the search path without any I/O: ELSER token parsing and decoding a
+ * recorded {@code _search} response into {@code Product}s at several result sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class DecodingBenchmark {
+
+    private static final JsonpDeserializer<SearchResponse<Product>> SEARCH_RESPONSE =
+            SearchResponse.createSearchResponseDeserializer(JsonpDeserializer.of(Product.class));
+
+    @Param({"10", "100", "1000"})
+    private int size;
+
+    private final JacksonJsonpMapper mapper = new JacksonJsonpMapper();
+    private BenchmarkEnvironment environment;
+    private ElserInferenceService inferenceService;
+    private String inferenceResponse;
+    private byte[] searchResponse;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        environment = BenchmarkEnvironment.start();
+        inferenceService = environment.bean(ElserInferenceService.class);
+        try (InputStream in = DecodingBenchmark.class.getResourceAsStream("/es-responses/sparse-embedding.json")) {
+            inferenceResponse = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        searchResponse = environment.stub().searchResponse(size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        environment.close();
+    }
+
+    @Benchmark
+    public Map<String, Double> parseElserTokens() throws IOException {
+        return inferenceService.parseElserTokens(inferenceResponse);
+    }
+
+    @Benchmark
+    public List<Product> decodeHits() {
+        try (JsonParser parser = mapper.jsonProvider().createParser(new ByteArrayInputStream(searchResponse))) {
+            SearchResponse<Product> response = SEARCH_RESPONSE.deserialize(parser, mapper);
+            return ProductService.toProducts(response.hits().hits());
+        }
+    }
+}
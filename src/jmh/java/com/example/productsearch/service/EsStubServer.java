@@ -0,0 +1,203 @@
+package com.example.productsearch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * In-process stand-in for the Elasticsearch endpoints the application calls. Responses are
+ * replayed from the recordings under {@code es-responses/}: {@code _search} and {@code _msearch}
+ * repeat the recorded hits up to the requested {@code size}, {@code _bulk} echoes one recorded item
+ * per action, {@code _mget} reports every id as not found and {@code _inference} returns the
+ * recorded expansion. Rendered search responses are kept per size so the stub adds as little as
+ * possible to the measured time.
+ */
+final class EsStubServer implements AutoCloseable {
+
+    private static final int DEFAULT_SIZE = 10;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(8, r -> {
+        Thread thread = new Thread(r, "es-stub");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final JsonNode searchRecording = readRecording("search.json");
+    private final JsonNode bulkItemRecording = readRecording("bulk-item.json");
+    private final byte[] inferenceEndpoints = toBytes(readRecording("inference-endpoints.json"));
+    private final byte[] sparseEmbedding = toBytes(readRecording("sparse-embedding.json"));
+    private final Map<Integer, byte[]> searchResponses = new ConcurrentHashMap<>();
+
+    EsStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String uri() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            byte[] body = readBody(exchange);
+            if (path.endsWith("/_search")) {
+                respond(exchange, 200, searchResponse(requestedSize(body)));
+            } else if (path.endsWith("/_msearch")) {
+                respond(exchange, 200, msearchResponse(body));
+            } else if (path.endsWith("/_mget")) {
+                respond(exchange, 200, mgetResponse(body));
+            } else if (path.endsWith("/_bulk")) {
+                respond(exchange, 200, bulkResponse(body));
+            } else if (path.equals("/_inference/sparse_embedding")) {
+                respond(exchange, 200, inferenceEndpoints);
+            } else if (path.startsWith("/_inference/sparse_embedding/")) {
+                respond(exchange, 200, sparseEmbedding);
+            } else {
+                respond(exchange, 404, ("{\"error\":{\"type\":\"resource_not_found_exception\",\"reason\":\"no stub for "
+                        + path + "\"},\"status\":404}").getBytes(StandardCharsets.UTF_8));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * A recorded {@code _search} response with {@code size} hits, as the stub would serve it.
+     */
+    byte[] searchResponse(int size) {
+        return searchResponses.computeIfAbsent(size, n -> {
+            ObjectNode response = searchRecording.deepCopy();
+            ArrayNode recorded = (ArrayNode) searchRecording.path("hits").path("hits");
+            ArrayNode hits = objectMapper.createArrayNode();
+            for (int i = 0; i < n; i++) {
+                ObjectNode hit = recorded.get(i % recorded.size()).deepCopy();
+                String id = Integer.toString(i + 1);
+                hit.put("_id", id);
+                hit.put("_score", recorded.get(0).path("_score").asDouble() / (1 + i * 0.05));
+                ((ObjectNode) hit.path("_source")).put("id", id);
+                hits.add(hit);
+            }
+            ObjectNode hitsNode = (ObjectNode) response.path("hits");
+            hitsNode.set("hits", hits);
+            ((ObjectNode) hitsNode.path("total")).put("value", Math.max(n, 10_000));
+            return toBytes(response);
+        });
+    }
+
+    private byte[] msearchResponse(byte[] body) throws IOException {
+        String[] lines = new String(body, StandardCharsets.UTF_8).split("\n");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("{\"took\":9,\"responses\":[".getBytes(StandardCharsets.UTF_8));
+        // Header and body lines alternate
+        for (int i = 1; i < lines.length; i += 2) {
+            if (i > 1) {
+                out.write(',');
+            }
+            out.write(searchResponse(requestedSize(lines[i].getBytes(StandardCharsets.UTF_8))));
+        }
+        out.write("]}".getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    private byte[] bulkResponse(byte[] body) throws IOException {
+        ArrayNode items = objectMapper.createArrayNode();
+        String[] lines = new String(body, StandardCharsets.UTF_8).split("\n");
+        // Every operation in this application is an index action followed by its document
+        for (int i = 0; i < lines.length; i += 2) {
+            String id = objectMapper.readTree(lines[i]).path("index").path("_id").asText();
+            ObjectNode item = bulkItemRecording.deepCopy();
+            ((ObjectNode) item.path("index")).put("_id", id);
+            items.add(item);
+        }
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("errors", false);
+        response.put("took", 3);
+        response.set("items", items);
+        return toBytes(response);
+    }
+
+    private byte[] mgetResponse(byte[] body) throws IOException {
+        ArrayNode docs = objectMapper.createArrayNode();
+        for (JsonNode id : objectMapper.readTree(body).path("ids")) {
+            docs.addObject()
+                    .put("_index", "products")
+                    .put("_id", id.asText())
+                    .put("found", false);
+        }
+        ObjectNode response = objectMapper.createObjectNode();
+        response.set("docs", docs);
+        return toBytes(response);
+    }
+
+    private int requestedSize(byte[] body) throws IOException {
+        if (body.length == 0) {
+            return DEFAULT_SIZE;
+        }
+        return objectMapper.readTree(body).path("size").asInt(DEFAULT_SIZE);
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        InputStream body = exchange.getRequestBody();
+        boolean gzip = "gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+        try (InputStream in = gzip ? new GZIPInputStream(body) : body) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        // The Java client refuses responses that do not identify as Elasticsearch
+        exchange.getResponseHeaders().set("X-Elastic-Product", "Elasticsearch");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private byte[] toBytes(JsonNode node) {
+        try {
+            return objectMapper.writeValueAsBytes(node);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private JsonNode readRecording(String name) {
+        try (InputStream in = EsStubServer.class.getResourceAsStream("/es-responses/" + name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing recording es-responses/" + name);
+            }
+            return objectMapper.readTree(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
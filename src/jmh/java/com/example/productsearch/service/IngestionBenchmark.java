@@ -0,0 +1,62 @@
+package com.example.productsearch.service;
+
+import com.example.productsearch.model.IngestionResult;
+import com.example.productsearch.model.Product;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One {@code ingest} call per operation: bulk request serialization, {@code _bulk} round trips and
+ * response handling for {@code documents} products split into batches of {@code batchSize}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IngestionBenchmark {
+
+    @Param({"1000", "10000"})
+    private int documents;
+
+    @Param({"100", "500", "1000"})
+    private int batchSize;
+
+    private BenchmarkEnvironment environment;
+    private ProductIngestionService ingestionService;
+    private List<Product> products;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        environment = BenchmarkEnvironment.start(Map.of("ingest.bulk.max-operations", batchSize));
+        ingestionService = environment.bean(ProductIngestionService.class);
+        products = new ArrayList<>(documents);
+        for (int i = 0; i < documents; i++) {
+            products.add(new Product(
+                    Integer.toString(i),
+                    "Product " + i,
+                    "Lightweight breathable running shoes with cushioned sole for marathon training and daily "
+                            + "jogging on pavement or trail, variant " + i,
+                    i % 2 == 0 ? "Footwear" : "Sports",
+                    10 + i % 500,
+                    "https://images.unsplash.com/photo-1542291026-7eec264c27ff?w=300&h=200&fit=crop"
+            ));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        environment.close();
+    }
+
+    @Benchmark
+    public IngestionResult ingest() {
+        return ingestionService.ingest(products.iterator());
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.productsearch.service;
+
+import com.example.productsearch.model.SearchExplanation;
+import com.example.productsearch.model.SearchFilters;
+import com.example.productsearch.model.SearchPage;
+import com.example.productsearch.model.SearchPageRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end search calls: query building, request serialization, the HTTP round trip to the
+ * stub, response decoding and mapping to {@code Product}. {@code SampleTime} reports latency
+ * percentiles; run with {@code -prof gc} for the allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int size;
+
+    private BenchmarkEnvironment environment;
+    private ProductService productService;
+    private SearchPageRequest page;
+    private final AtomicLong queryCounter = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        environment = BenchmarkEnvironment.start();
+        productService = environment.bean(ProductService.class);
+        page = new SearchPageRequest(size, null, false, null, SearchFilters.NONE, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        environment.close();
+    }
+
+    @Benchmark
+    public SearchPage semanticSearch() throws IOException {
+        return productService.semanticSearch("comfortable shoes for running", page);
+    }
+
+    @Benchmark
+    public SearchPage hybridSearch() throws IOException {
+        return productService.hybridSearch("comfortable shoes for running", page);
+    }
+
+    /**
+     * Explain always fetches the default 10 hits; {@code size} has no effect on it. The token cache
+     * is hot after the first call, so this measures the search and the cache lookup.
+     */
+    @Benchmark
+    public SearchExplanation explainSearch() throws IOException {
+        return productService.explainSearch("comfortable shoes for running");
+    }
+
+    /**
+     * Explain with a distinct query per call, so every invocation also pays for an
+     * {@code _inference} round trip and token parsing.
+     */
+    @Benchmark
+    public SearchExplanation explainSearchUncachedTokens() throws IOException {
+        return productService.explainSearch("comfortable shoes for running " + queryCounter.incrementAndGet());
+    }
+}
@@ -1,34 +1,122 @@
 package com.example.productsearch.config;
 
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.ElasticsearchTransport;
 import co.elastic.clients.transport.rest5_client.Rest5ClientTransport;
+import co.elastic.clients.transport.rest5_client.low_level.NodeSelector;
 import co.elastic.clients.transport.rest5_client.low_level.Rest5Client;
+import co.elastic.clients.transport.rest5_client.low_level.sniffer.Sniffer;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.net.URI;
+import java.util.List;
 
+/**
+ * Builds the single HTTP transport shared by the typed clients, the low-level requests used for
+ * streaming and the {@code _inference} calls, so all Elasticsearch traffic draws from one
+ * connection pool whose limits and occupancy are visible through {@code TransportStatsService}.
+ */
 @Configuration
 public class ElasticsearchConfig {
 
-    @Value("${elasticsearch.host:localhost}")
-    private String host;
+    @Value("${elasticsearch.uris:http://${elasticsearch.host:localhost}:${elasticsearch.port:9200}}")
+    private List<String> uris;
 
-    @Value("${elasticsearch.port:9200}")
-    private int port;
+    @Value("${elasticsearch.pool.max-total:100}")
+    private int maxConnTotal;
+
+    @Value("${elasticsearch.pool.max-per-route:50}")
+    private int maxConnPerRoute;
+
+    @Value("${elasticsearch.pool.keep-alive-ms:60000}")
+    private long keepAliveMs;
+
+    @Value("${elasticsearch.connect-timeout-ms:1000}")
+    private long connectTimeoutMs;
+
+    @Value("${elasticsearch.socket-timeout-ms:30000}")
+    private long socketTimeoutMs;
+
+    @Value("${elasticsearch.compression-enabled:true}")
+    private boolean compressionEnabled;
+
+    @Value("${elasticsearch.sniff.enabled:false}")
+    private boolean sniffEnabled;
+
+    @Value("${elasticsearch.sniff.interval-ms:300000}")
+    private int sniffIntervalMs;
+
+    private Sniffer sniffer;
+
+    @Bean
+    public PoolingAsyncClientConnectionManager elasticsearchConnectionManager() {
+        return PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnTotal)
+                .setMaxConnPerRoute(maxConnPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setSocketTimeout(Timeout.ofMilliseconds(socketTimeoutMs))
+                        .build())
+                .build();
+    }
 
     @Bean
-    public ElasticsearchClient elasticsearchClient() {
-        Rest5Client restClient = Rest5Client.builder(
-                URI.create("http://" + host + ":" + port)
-        ).build();
+    public Rest5Client restClient(PoolingAsyncClientConnectionManager connectionManager) {
+        CloseableHttpAsyncClient httpClient = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy((response, context) -> TimeValue.ofMilliseconds(keepAliveMs))
+                .evictIdleConnections(TimeValue.ofMilliseconds(keepAliveMs))
+                .build();
+        httpClient.start();
 
-        Rest5ClientTransport transport = new Rest5ClientTransport(
+        // Requests are spread round-robin over the configured (or sniffed) nodes
+        Rest5Client restClient = Rest5Client.builder(uris.stream().map(URI::create).toArray(URI[]::new))
+                .setHttpClient(httpClient)
+                .setCompressionEnabled(compressionEnabled)
+                .setNodeSelector(NodeSelector.SKIP_DEDICATED_MASTERS)
+                .build();
+
+        if (sniffEnabled) {
+            sniffer = Sniffer.builder(restClient)
+                    .setSniffIntervalMillis(sniffIntervalMs)
+                    .build();
+        }
+        return restClient;
+    }
+
+    @Bean
+    public ElasticsearchTransport elasticsearchTransport(Rest5Client restClient) {
+        return new Rest5ClientTransport(
                 restClient, new JacksonJsonpMapper()
         );
+    }
 
+    @Bean
+    public ElasticsearchClient elasticsearchClient(ElasticsearchTransport transport) {
         return new ElasticsearchClient(transport);
     }
+
+    @Bean
+    public ElasticsearchAsyncClient elasticsearchAsyncClient(ElasticsearchTransport transport) {
+        return new ElasticsearchAsyncClient(transport);
+    }
+
+    @PreDestroy
+    void closeSniffer() {
+        if (sniffer != null) {
+            sniffer.close();
+        }
+    }
 }
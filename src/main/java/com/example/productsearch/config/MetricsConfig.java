@@ -0,0 +1,104 @@
+package com.example.productsearch.config;
+
+import com.example.productsearch.service.AdaptiveConcurrencyLimiter;
+import com.example.productsearch.service.ElserInferenceService;
+import com.example.productsearch.service.InferenceCircuitBreaker;
+import com.example.productsearch.service.ProductService;
+import com.example.productsearch.service.SearchCoalescer;
+import com.example.productsearch.service.SearchResultCache;
+import com.example.productsearch.service.SuggestionService;
+import com.example.productsearch.service.TransportStatsService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Locale;
+
+/**
+ * Publishes the existing cache, coalescing, suggestion and connection pool statistics as Micrometer
+ * meters.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder searchCacheMetrics(SearchResultCache resultCache, ElserInferenceService inferenceService) {
+        return registry -> {
+            Gauge.builder("search.cache.hit.ratio", resultCache, cache -> cache.stats().hitRatio())
+                    .register(registry);
+            Gauge.builder("search.cache.size", resultCache, cache -> cache.stats().estimatedBytes())
+                    .baseUnit("bytes")
+                    .register(registry);
+            Gauge.builder("elser.token.cache.hit.ratio", inferenceService, service -> service.stats().hitRate())
+                    .register(registry);
+            Gauge.builder("elser.token.cache.size", inferenceService, service -> service.stats().size())
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder searchCoalescingMetrics(SearchCoalescer coalescer) {
+        return registry -> {
+            FunctionCounter.builder("search.coalesced", coalescer, c -> c.stats().coalesced())
+                    .description("Searches that joined an identical in-flight request")
+                    .register(registry);
+            FunctionCounter.builder("search.coalesce.timeouts", coalescer, c -> c.stats().timeouts())
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder elasticsearchPoolMetrics(TransportStatsService transportStats) {
+        return registry -> {
+            Gauge.builder("elasticsearch.pool.connections", transportStats, t -> t.stats().total().leased())
+                    .tag("state", "leased")
+                    .register(registry);
+            Gauge.builder("elasticsearch.pool.connections", transportStats, t -> t.stats().total().pending())
+                    .tag("state", "pending")
+                    .register(registry);
+            Gauge.builder("elasticsearch.pool.connections", transportStats, t -> t.stats().total().available())
+                    .tag("state", "available")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder searchResilienceMetrics(AdaptiveConcurrencyLimiter limiter, InferenceCircuitBreaker breaker,
+                                               ProductService productService) {
+        return registry -> {
+            Gauge.builder("search.limit.current", limiter, AdaptiveConcurrencyLimiter::limit)
+                    .description("Adaptive concurrency limit for Elasticsearch searches")
+                    .register(registry);
+            Gauge.builder("search.limit.in.flight", limiter, AdaptiveConcurrencyLimiter::inFlight)
+                    .register(registry);
+            FunctionCounter.builder("search.limit.rejections", limiter, AdaptiveConcurrencyLimiter::rejected)
+                    .description("Searches shed with 503 because the limit was reached")
+                    .register(registry);
+            for (InferenceCircuitBreaker.State state : InferenceCircuitBreaker.State.values()) {
+                Gauge.builder("search.breaker.state", breaker, b -> b.state() == state ? 1 : 0)
+                        .description("1 for the current state of the inference circuit breaker")
+                        .tag("state", state.name().toLowerCase(Locale.ROOT))
+                        .register(registry);
+            }
+            FunctionCounter.builder("search.degraded", productService, p -> p.resilienceStats().degraded())
+                    .description("Searches answered lexically while the breaker was open")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder suggestionMetrics(SuggestionService suggestionService) {
+        return registry -> {
+            Gauge.builder("suggest.dictionary.size", suggestionService, s -> s.stats().phrases())
+                    .description("Phrases in the in-memory typeahead dictionary")
+                    .register(registry);
+            Gauge.builder("suggest.cache.hit.ratio", suggestionService, s -> s.stats().cacheHitRate())
+                    .register(registry);
+            FunctionCounter.builder("suggest.fallbacks", suggestionService, s -> s.stats().searchFallbacks())
+                    .description("Suggestions completed with a search_as_you_type query")
+                    .register(registry);
+        };
+    }
+}
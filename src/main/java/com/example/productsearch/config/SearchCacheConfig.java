@@ -0,0 +1,36 @@
+package com.example.productsearch.config;
+
+import com.example.productsearch.service.CaffeineSearchResultCache;
+import com.example.productsearch.service.IndexGeneration;
+import com.example.productsearch.service.NoOpSearchResultCache;
+import com.example.productsearch.service.SearchResultCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class SearchCacheConfig {
+
+    @Value("${search.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${search.cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${search.cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    @Value("${search.cache.refresh-grace-ms:1000}")
+    private long refreshGraceMs;
+
+    @Bean
+    public SearchResultCache searchResultCache(IndexGeneration indexGeneration) {
+        if (!enabled) {
+            return new NoOpSearchResultCache();
+        }
+        return new CaffeineSearchResultCache(indexGeneration, maxBytes,
+                Duration.ofSeconds(ttlSeconds), Duration.ofMillis(refreshGraceMs));
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.productsearch.config;
+
+import com.example.productsearch.service.SearchMetrics;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Records the serialization phase and error counts for the search endpoints. The start of
+ * serialization is stamped by {@link SerializationTimingAdvice}; for {@code @ResponseBody} handlers
+ * the body is fully written before {@code postHandle} runs, so the difference is the write time.
+ */
+@Configuration
+public class SearchMetricsWebConfig implements WebMvcConfigurer {
+
+    static final String SERIALIZATION_START = SearchMetricsWebConfig.class.getName() + ".serializationStart";
+
+    private final SearchMetrics metrics;
+
+    public SearchMetricsWebConfig(SearchMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                   ModelAndView modelAndView) {
+                if (request.getAttribute(SERIALIZATION_START) instanceof Long start) {
+                    metrics.recordPhase(route(request), "serialization", System.nanoTime() - start);
+                }
+            }
+
+            @Override
+            public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                        Exception ex) {
+                if (ex != null) {
+                    metrics.recordError(route(request), ex.getClass().getSimpleName());
+                } else if (response.getStatus() >= 500) {
+                    metrics.recordError(route(request), "status_" + response.getStatus());
+                }
+            }
+        }).addPathPatterns("/api/search", "/api/search/**");
+    }
+
+    private static String route(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern != null ? pattern.toString() : request.getRequestURI();
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.productsearch.controller;
+
+import com.example.productsearch.model.ReindexStatus;
+import com.example.productsearch.service.ReindexService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    private final ReindexService reindexService;
+
+    public AdminController(ReindexService reindexService) {
+        this.reindexService = reindexService;
+    }
+
+    @PostMapping("/reindex")
+    public ResponseEntity<ReindexStatus> startReindex() {
+        return ResponseEntity.accepted().body(reindexService.start());
+    }
+
+    @GetMapping("/reindex")
+    public ResponseEntity<ReindexStatus> reindexStatus() {
+        return ResponseEntity.ok(reindexService.status());
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<String> conflict(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.productsearch.controller;
+
+import com.example.productsearch.model.IngestionResult;
+import com.example.productsearch.model.IngestionStats;
+import com.example.productsearch.service.ProductIngestionService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@RestController
+@RequestMapping("/api/products")
+public class ProductController {
+
+    private final ProductIngestionService ingestionService;
+
+    public ProductController(ProductIngestionService ingestionService) {
+        this.ingestionService = ingestionService;
+    }
+
+    @PostMapping(value = "/bulk", consumes = {"application/x-ndjson", "application/json"})
+    public ResponseEntity<IngestionResult> bulkIngest(InputStream body) throws IOException {
+        IngestionResult result = ingestionService.ingestNdjson(body);
+        return ResponseEntity.ok(result);
+    }
+
+    @GetMapping("/bulk/stats")
+    public ResponseEntity<IngestionStats> bulkStats() {
+        return ResponseEntity.ok(ingestionService.stats());
+    }
+}
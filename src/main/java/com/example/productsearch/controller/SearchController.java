@@ -1,13 +1,33 @@
 package com.example.productsearch.controller;
 
-import com.example.productsearch.model.Product;
+import com.example.productsearch.model.BatchSearchRequest;
+import com.example.productsearch.model.BatchSearchResponse;
+import com.example.productsearch.model.CoalescingStats;
+import com.example.productsearch.model.InferenceCacheStats;
+import com.example.productsearch.model.ResilienceStats;
+import com.example.productsearch.model.RrfOptions;
+import com.example.productsearch.model.RrfSearchResponse;
+import com.example.productsearch.model.SearchCacheStats;
 import com.example.productsearch.model.SearchExplanation;
+import com.example.productsearch.model.SearchFilters;
+import com.example.productsearch.model.SearchPage;
+import com.example.productsearch.model.SearchPageRequest;
+import com.example.productsearch.service.ElserInferenceService;
 import com.example.productsearch.service.ProductService;
+import com.example.productsearch.service.SearchOverloadedException;
+import com.example.productsearch.service.SearchStreamService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.util.List;
@@ -17,21 +37,78 @@ import java.util.List;
 public class SearchController {
 
     private final ProductService productService;
+    private final ElserInferenceService inferenceService;
+    private final SearchStreamService streamService;
 
-    public SearchController(ProductService productService) {
+    public SearchController(ProductService productService, ElserInferenceService inferenceService,
+                            SearchStreamService streamService) {
         this.productService = productService;
+        this.inferenceService = inferenceService;
+        this.streamService = streamService;
     }
 
     @GetMapping("/search")
-    public ResponseEntity<List<Product>> semanticSearch(@RequestParam String q) throws IOException {
-        List<Product> results = productService.semanticSearch(q);
-        return ResponseEntity.ok(results);
+    public ResponseEntity<SearchPage> semanticSearch(
+            @RequestParam String q,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean paginate,
+            @RequestParam(required = false) List<String> fields,
+            @RequestParam(required = false) List<String> category,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice,
+            @RequestParam(defaultValue = "false") boolean facets) throws IOException {
+        SearchFilters filters = new SearchFilters(category, minPrice, maxPrice);
+        SearchPage page = productService.semanticSearch(q,
+                new SearchPageRequest(size, cursor, paginate, fields, filters, facets));
+        return ResponseEntity.ok(page);
     }
 
     @GetMapping("/search/hybrid")
-    public ResponseEntity<List<Product>> hybridSearch(@RequestParam String q) throws IOException {
-        List<Product> results = productService.hybridSearch(q);
-        return ResponseEntity.ok(results);
+    public ResponseEntity<SearchPage> hybridSearch(
+            @RequestParam String q,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean paginate,
+            @RequestParam(required = false) List<String> fields,
+            @RequestParam(required = false) List<String> category,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice,
+            @RequestParam(defaultValue = "false") boolean facets) throws IOException {
+        SearchFilters filters = new SearchFilters(category, minPrice, maxPrice);
+        SearchPage page = productService.hybridSearch(q,
+                new SearchPageRequest(size, cursor, paginate, fields, filters, facets));
+        return ResponseEntity.ok(page);
+    }
+
+    @PostMapping("/search/batch")
+    public ResponseEntity<BatchSearchResponse> batchSearch(@RequestBody BatchSearchRequest request) throws IOException {
+        BatchSearchResponse response = productService.batchSearch(request);
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/search/stream")
+    public ResponseEntity<StreamingResponseBody> streamSearch(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "semantic") String mode,
+            @RequestParam(defaultValue = "1000") int size) throws IOException {
+        SearchStreamService.HitStream stream = streamService.streamSearch(mode, q, size);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(stream::writeTo);
+    }
+
+    @GetMapping("/search/hybrid/rrf")
+    public ResponseEntity<RrfSearchResponse> rrfSearch(
+            @RequestParam String q,
+            @RequestParam(required = false) Integer k,
+            @RequestParam(required = false) Integer windowSize,
+            @RequestParam(required = false) Double semanticWeight,
+            @RequestParam(required = false) Double lexicalWeight,
+            @RequestParam(required = false) Integer size) throws IOException {
+        RrfSearchResponse response = productService.rrfSearch(q,
+                new RrfOptions(k, windowSize, semanticWeight, lexicalWeight, size));
+        return ResponseEntity.ok(response);
     }
 
     @GetMapping("/search/explain")
@@ -39,4 +116,36 @@ public class SearchController {
         SearchExplanation explanation = productService.explainSearch(q);
         return ResponseEntity.ok(explanation);
     }
+
+    @GetMapping("/search/cache/stats")
+    public ResponseEntity<SearchCacheStats> cacheStats() {
+        return ResponseEntity.ok(productService.cacheStats());
+    }
+
+    @GetMapping("/search/coalescing/stats")
+    public ResponseEntity<CoalescingStats> coalescingStats() {
+        return ResponseEntity.ok(productService.coalescingStats());
+    }
+
+    @GetMapping("/search/resilience/stats")
+    public ResponseEntity<ResilienceStats> resilienceStats() {
+        return ResponseEntity.ok(productService.resilienceStats());
+    }
+
+    @GetMapping("/search/explain/stats")
+    public ResponseEntity<InferenceCacheStats> explainStats() {
+        return ResponseEntity.ok(inferenceService.stats());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    @ExceptionHandler(SearchOverloadedException.class)
+    public ResponseEntity<String> overloaded(SearchOverloadedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(e.retryAfterSeconds()))
+                .body(e.getMessage());
+    }
 }
@@ -0,0 +1,61 @@
+package com.example.productsearch.controller;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code /actuator/searchlatency}: p50/p95/p99 in milliseconds for every search endpoint, phase
+ * and the ES-reported {@code took}, in one response.
+ */
+@Component
+@Endpoint(id = "searchlatency")
+public class SearchLatencyEndpoint {
+
+    private final MeterRegistry registry;
+
+    public SearchLatencyEndpoint(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Number>> latency() {
+        Map<String, Map<String, Number>> result = new TreeMap<>();
+        for (Timer timer : registry.find("http.server.requests").timers()) {
+            String uri = timer.getId().getTag("uri");
+            if (uri != null && uri.startsWith("/api/search")) {
+                result.put("http " + timer.getId().getTag("method") + " " + uri + " " + timer.getId().getTag("status"),
+                        summarize(timer));
+            }
+        }
+        for (Timer timer : registry.find("search.phase").timers()) {
+            result.put("phase " + timer.getId().getTag("endpoint") + " " + timer.getId().getTag("phase"),
+                    summarize(timer));
+        }
+        for (Timer timer : registry.find("search.es.took").timers()) {
+            result.put("took " + timer.getId().getTag("endpoint"), summarize(timer));
+        }
+        return result;
+    }
+
+    private static Map<String, Number> summarize(Timer timer) {
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        Map<String, Number> summary = new LinkedHashMap<>();
+        summary.put("count", snapshot.count());
+        summary.put("mean", snapshot.mean(TimeUnit.MILLISECONDS));
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            summary.put("p" + Math.round(percentile.percentile() * 100), percentile.value(TimeUnit.MILLISECONDS));
+        }
+        summary.put("max", snapshot.max(TimeUnit.MILLISECONDS));
+        return summary;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.productsearch.controller;
+
+import com.example.productsearch.model.SuggestStats;
+import com.example.productsearch.model.Suggestions;
+import com.example.productsearch.service.SuggestionService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/suggest")
+public class SuggestController {
+
+    private final SuggestionService suggestionService;
+
+    public SuggestController(SuggestionService suggestionService) {
+        this.suggestionService = suggestionService;
+    }
+
+    @GetMapping
+    public ResponseEntity<Suggestions> suggest(@RequestParam String prefix,
+                                               @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(new Suggestions(prefix, suggestionService.suggest(prefix, size)));
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<SuggestStats> stats() {
+        return ResponseEntity.ok(suggestionService.stats());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+}
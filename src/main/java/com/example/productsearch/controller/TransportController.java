@@ -0,0 +1,24 @@
+package com.example.productsearch.controller;
+
+import com.example.productsearch.model.TransportStats;
+import com.example.productsearch.service.TransportStatsService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/transport")
+public class TransportController {
+
+    private final TransportStatsService transportStatsService;
+
+    public TransportController(TransportStatsService transportStatsService) {
+        this.transportStatsService = transportStatsService;
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<TransportStats> stats() {
+        return ResponseEntity.ok(transportStatsService.stats());
+    }
+}
@@ -1,31 +1,138 @@
 package com.example.productsearch.init;
 
+import com.example.productsearch.model.IngestionResult;
 import com.example.productsearch.model.Product;
+import com.example.productsearch.model.SearchPageRequest;
+import com.example.productsearch.service.ElserInferenceService;
+import com.example.productsearch.service.IndexManager;
+import com.example.productsearch.service.ProductIngestionService;
 import com.example.productsearch.service.ProductService;
+import com.example.productsearch.service.SuggestionService;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Component;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Prepares the application for traffic on a background thread so that startup itself does not
+ * block: ensure the index, load the sample data and the suggestion dictionary, trigger ELSER
+ * deployment with a dummy inference and replay the most common queries to prime Elasticsearch and
+ * the application caches. Readiness is held back by {@link WarmupHealthIndicator} until all phases
+ * have run.
+ */
 @Component
 public class DataInitializer implements ApplicationRunner {
 
     private static final Logger log = LoggerFactory.getLogger(DataInitializer.class);
+    private static final String WARMUP_INFERENCE_INPUT = "warm up the elser model";
+
+    public enum Phase { PENDING, INDEX, SAMPLE_DATA, SUGGESTIONS, INFERENCE, QUERIES, READY }
 
     private final ProductService productService;
+    private final IndexManager indexManager;
+    private final ProductIngestionService ingestionService;
+    private final ElserInferenceService inferenceService;
+    private final SuggestionService suggestionService;
+    private final ResourceLoader resourceLoader;
+
+    private volatile Phase phase = Phase.PENDING;
+    private volatile Thread worker;
+
+    @Value("${warmup.queries-file:classpath:warmup-queries.txt}")
+    private String queriesFile;
+
+    @Value("${warmup.max-queries:100}")
+    private int maxQueries;
+
+    @Value("${warmup.inference-timeout-ms:300000}")
+    private long inferenceTimeoutMs;
 
-    public DataInitializer(ProductService productService) {
+    @Value("${warmup.retry-interval-ms:5000}")
+    private long retryIntervalMs;
+
+    public DataInitializer(ProductService productService, IndexManager indexManager,
+                           ProductIngestionService ingestionService, ElserInferenceService inferenceService,
+                           SuggestionService suggestionService, ResourceLoader resourceLoader) {
         this.productService = productService;
+        this.indexManager = indexManager;
+        this.ingestionService = ingestionService;
+        this.inferenceService = inferenceService;
+        this.suggestionService = suggestionService;
+        this.resourceLoader = resourceLoader;
     }
 
     @Override
-    public void run(ApplicationArguments args) throws Exception {
-        log.info("Initializing Elasticsearch index and sample data...");
+    public void run(ApplicationArguments args) {
+        Thread thread = new Thread(this::warmUp, "warmup");
+        thread.setDaemon(true);
+        worker = thread;
+        thread.start();
+    }
+
+    public Phase phase() {
+        return phase;
+    }
+
+    @PreDestroy
+    void stop() {
+        Thread thread = worker;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void warmUp() {
+        long start = System.nanoTime();
+        try {
+            phase = Phase.INDEX;
+            ensureIndex();
+            phase = Phase.SAMPLE_DATA;
+            indexSampleData();
+            phase = Phase.SUGGESTIONS;
+            loadSuggestions();
+            phase = Phase.INFERENCE;
+            warmUpInference();
+            phase = Phase.QUERIES;
+            replayQueries();
+            phase = Phase.READY;
+            log.info("Warm-up complete in {} ms, ready for traffic",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("Warm-up interrupted during phase {}", phase);
+        }
+    }
+
+    /**
+     * The index is required to serve anything, so this retries until Elasticsearch is reachable.
+     */
+    private void ensureIndex() throws InterruptedException {
+        while (true) {
+            try {
+                indexManager.ensureIndex();
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not ensure index, retrying in {} ms: {}", retryIntervalMs, e.getMessage());
+                Thread.sleep(retryIntervalMs);
+            }
+        }
+    }
 
-        productService.createIndexIfNotExists();
+    private void indexSampleData() {
+        log.info("Indexing sample data...");
 
         List<Product> sampleProducts = List.of(
                 new Product("1", "Running Shoes Pro",
@@ -70,14 +177,93 @@ public class DataInitializer implements ApplicationRunner {
                         "https://images.unsplash.com/photo-1553062407-98eeb64c6a62?w=300&h=200&fit=crop")
         );
 
-        for (Product product : sampleProducts) {
+        IngestionResult result = ingestionService.ingest(sampleProducts.iterator());
+        for (String error : result.errors()) {
+            log.warn("Failed to index sample product: {}", error);
+        }
+
+        log.info("Sample data initialization complete. Indexed {} of {} products.",
+                result.indexed(), sampleProducts.size());
+    }
+
+    /**
+     * Product names already in the index; names written later are added as they are indexed.
+     */
+    private void loadSuggestions() {
+        try {
+            suggestionService.loadFromIndex();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not load suggestions from the index: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * ELSER allocations may be scaled to zero or still deploying; the first inference request
+     * triggers the deployment and can take minutes. Retried until tokens come back or the timeout
+     * passes, after which startup continues and semantic search relies on the circuit breaker.
+     */
+    private void warmUpInference() throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(inferenceTimeoutMs);
+        while (true) {
             try {
-                productService.indexProduct(product);
-            } catch (Exception e) {
-                log.warn("Failed to index product '{}': {}", product.name(), e.getMessage());
+                Map<String, Double> tokens = inferenceService.fetchTokens(WARMUP_INFERENCE_INPUT);
+                if (!tokens.isEmpty()) {
+                    log.info("ELSER responded after {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    return;
+                }
+                log.info("ELSER returned no tokens yet, model may still be deploying");
+            } catch (IOException e) {
+                log.info("ELSER warm-up inference failed: {}", e.getMessage());
             }
+            if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryIntervalMs) > deadline) {
+                log.warn("ELSER did not respond within {} ms, continuing warm-up without it", inferenceTimeoutMs);
+                return;
+            }
+            Thread.sleep(retryIntervalMs);
+        }
+    }
+
+    /**
+     * Runs each query from the warm-up file through semantic and hybrid search and the token cache,
+     * which loads the relevant index structures in Elasticsearch and fills the result cache.
+     */
+    private void replayQueries() throws InterruptedException {
+        List<String> queries;
+        Resource resource = resourceLoader.getResource(queriesFile);
+        if (!resource.exists()) {
+            log.info("No warm-up queries at {}", queriesFile);
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            queries = reader.lines()
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .distinct()
+                    .limit(maxQueries)
+                    .toList();
+        } catch (IOException e) {
+            log.warn("Could not read warm-up queries from {}: {}", queriesFile, e.getMessage());
+            return;
         }
 
-        log.info("Sample data initialization complete. Indexed {} products.", sampleProducts.size());
+        long start = System.nanoTime();
+        int failed = 0;
+        for (String query : queries) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            try {
+                productService.semanticSearch(query, SearchPageRequest.firstPage());
+                productService.hybridSearch(query, SearchPageRequest.firstPage());
+                inferenceService.fetchTokens(query);
+            } catch (IOException | RuntimeException e) {
+                failed++;
+                log.debug("Warm-up query '{}' failed: {}", query, e.getMessage());
+            }
+        }
+        log.info("Replayed {} warm-up queries in {} ms ({} failed)", queries.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), failed);
     }
 }
@@ -0,0 +1,26 @@
+package com.example.productsearch.init;
+
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Part of the readiness group: reports {@code OUT_OF_SERVICE} until {@link DataInitializer} has
+ * finished warming up, so the pod receives no traffic while ELSER and the caches are still cold.
+ */
+@Component
+public class WarmupHealthIndicator implements HealthIndicator {
+
+    private final DataInitializer initializer;
+
+    public WarmupHealthIndicator(DataInitializer initializer) {
+        this.initializer = initializer;
+    }
+
+    @Override
+    public Health health() {
+        DataInitializer.Phase phase = initializer.phase();
+        Health.Builder builder = phase == DataInitializer.Phase.READY ? Health.up() : Health.outOfService();
+        return builder.withDetail("phase", phase.name()).build();
+    }
+}
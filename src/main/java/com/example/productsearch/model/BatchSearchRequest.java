@@ -0,0 +1,14 @@
+package com.example.productsearch.model;
+
+import java.util.List;
+
+public record BatchSearchRequest(
+        List<Query> queries
+) {
+    public record Query(
+            String q,
+            String mode,
+            Integer size,
+            SearchFilters filters
+    ) {}
+}
@@ -0,0 +1,20 @@
+package com.example.productsearch.model;
+
+import java.util.List;
+
+/**
+ * Results in request order. Each item carries either {@code products} and {@code total} or an
+ * {@code error}; one failing query does not fail the batch. {@code degraded} marks lexical
+ * results served while semantic search was unavailable.
+ */
+public record BatchSearchResponse(
+        List<Item> results
+) {
+    public record Item(
+            String query,
+            List<Product> products,
+            long total,
+            boolean degraded,
+            String error
+    ) {}
+}
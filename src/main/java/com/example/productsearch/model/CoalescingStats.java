@@ -0,0 +1,9 @@
+package com.example.productsearch.model;
+
+public record CoalescingStats(
+        long leaders,
+        long coalesced,
+        long timeouts,
+        int inFlight
+) {
+}
@@ -0,0 +1,24 @@
+package com.example.productsearch.model;
+
+import java.util.List;
+
+/**
+ * Aggregations over all hits of a filtered search: document counts per category and per price
+ * bucket of {@code [from, to)}. Each facet ignores its own filter, so the category counts reflect
+ * only the price filter and the price counts only the category filter.
+ */
+public record Facets(
+        List<CategoryCount> categories,
+        List<PriceRange> prices
+) {
+    public Facets {
+        categories = List.copyOf(categories);
+        prices = List.copyOf(prices);
+    }
+
+    public record CategoryCount(String category, long count) {
+    }
+
+    public record PriceRange(double from, double to, long count) {
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.productsearch.model;
+
+public record FusedResult(
+        Product product,
+        double score,
+        Integer semanticRank,
+        Double semanticScore,
+        Integer lexicalRank,
+        Double lexicalScore
+) {
+}
@@ -0,0 +1,11 @@
+package com.example.productsearch.model;
+
+public record InferenceCacheStats(
+        String inferenceId,
+        long hitCount,
+        long missCount,
+        long evictionCount,
+        double hitRate,
+        long size
+) {
+}
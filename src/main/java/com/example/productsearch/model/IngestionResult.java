@@ -0,0 +1,18 @@
+package com.example.productsearch.model;
+
+import java.util.List;
+
+public record IngestionResult(
+        long submitted,
+        long indexed,
+        long created,
+        long updated,
+        long skipped,
+        long failed,
+        long retried,
+        long bulkRequests,
+        long elapsedMillis,
+        double docsPerSecond,
+        List<String> errors
+) {
+}
@@ -0,0 +1,11 @@
+package com.example.productsearch.model;
+
+public record IngestionStats(
+        long runs,
+        long totalIndexed,
+        long totalSkipped,
+        long totalFailed,
+        long totalRetried,
+        IngestionResult lastRun
+) {
+}
@@ -0,0 +1,66 @@
+package com.example.productsearch.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A product as stored in the index, with the digests used for change detection.
+ * {@code content_hash} covers the fields that feed ELSER inference, {@code doc_hash} covers all
+ * fields; equal content hashes mean the embeddings can be kept. {@code indexed_at} is the epoch
+ * millisecond time of the last write, which a reindex uses to find documents changed while it ran.
+ */
+public record ProductDocument(
+        @JsonProperty("id") String id,
+        @JsonProperty("name") String name,
+        @JsonProperty("description") String description,
+        @JsonProperty("category") String category,
+        @JsonProperty("price") double price,
+        @JsonProperty("image_url") String imageUrl,
+        @JsonProperty("content_hash") String contentHash,
+        @JsonProperty("doc_hash") String docHash,
+        @JsonProperty("indexed_at") Long indexedAt
+) {
+    public static ProductDocument of(Product product, Hashes hashes) {
+        return new ProductDocument(product.id(), product.name(), product.description(), product.category(),
+                product.price(), product.imageUrl(), hashes.contentHash(), hashes.docHash(),
+                System.currentTimeMillis());
+    }
+
+    public Hashes hashes() {
+        return new Hashes(contentHash, docHash);
+    }
+
+    /**
+     * Partial update body for everything except {@code description}; updating only these fields
+     * keeps the stored embeddings.
+     */
+    public Map<String, Object> nonSemanticFields() {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("name", name);
+        fields.put("category", category);
+        fields.put("price", price);
+        fields.put("image_url", imageUrl);
+        fields.put("doc_hash", docHash);
+        fields.put("indexed_at", indexedAt);
+        return fields;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Hashes(
+            @JsonProperty("content_hash") String contentHash,
+            @JsonProperty("doc_hash") String docHash
+    ) {
+    }
+
+    /**
+     * Write time of a stored document; {@code null} for documents written before it was recorded.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record WriteTime(
+            @JsonProperty("indexed_at") Long indexedAt
+    ) {
+    }
+}
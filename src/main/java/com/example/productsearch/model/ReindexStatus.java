@@ -0,0 +1,28 @@
+package com.example.productsearch.model;
+
+/**
+ * Progress of the current or last reindex job. {@code phase} is one of {@code PREPARING},
+ * {@code COPYING}, {@code RESTORING_SETTINGS}, {@code FORCE_MERGING}, {@code CATCHING_UP},
+ * {@code SWAPPING_ALIAS}, {@code ROLLING_BACK}, {@code DONE} or {@code FAILED}. {@code writeIndex}
+ * is where writes go: while it differs from the searched {@code sourceIndex}, new writes are not
+ * visible to search. {@code caughtUp} counts documents written to the source during the copy and
+ * replayed onto the target; {@code carriedBack} counts documents a failed job copied back to the
+ * source.
+ */
+public record ReindexStatus(
+        String phase,
+        String sourceIndex,
+        String targetIndex,
+        String writeIndex,
+        long total,
+        long copied,
+        long conflicts,
+        long failed,
+        long retried,
+        long caughtUp,
+        long carriedBack,
+        long elapsedMillis,
+        double docsPerSecond,
+        String error
+) {
+}
@@ -0,0 +1,10 @@
+package com.example.productsearch.model;
+
+public record ResilienceStats(
+        int concurrencyLimit,
+        int inFlight,
+        long rejected,
+        String breakerState,
+        long degraded
+) {
+}
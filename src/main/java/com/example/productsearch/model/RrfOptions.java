@@ -0,0 +1,14 @@
+package com.example.productsearch.model;
+
+/**
+ * Per-request overrides for reciprocal rank fusion. Any {@code null} component falls back to the
+ * configured {@code search.rrf.*} default.
+ */
+public record RrfOptions(
+        Integer k,
+        Integer windowSize,
+        Double semanticWeight,
+        Double lexicalWeight,
+        Integer size
+) {
+}
@@ -0,0 +1,16 @@
+package com.example.productsearch.model;
+
+import java.util.List;
+
+/**
+ * Fused hybrid results. {@code degraded} marks results fused from the lexical leg alone, served
+ * while ELSER inference is unavailable or when the semantic leg failed.
+ */
+public record RrfSearchResponse(
+        List<FusedResult> results,
+        boolean degraded
+) {
+    public RrfSearchResponse {
+        results = List.copyOf(results);
+    }
+}
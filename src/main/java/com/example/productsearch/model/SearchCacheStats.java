@@ -0,0 +1,13 @@
+package com.example.productsearch.model;
+
+public record SearchCacheStats(
+        boolean enabled,
+        long hitCount,
+        long missCount,
+        long evictionCount,
+        double hitRatio,
+        long entries,
+        long estimatedBytes,
+        long maxBytes
+) {
+}
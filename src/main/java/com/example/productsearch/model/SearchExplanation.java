@@ -3,10 +3,17 @@ package com.example.productsearch.model;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Semantic results with the query's ELSER tokens. {@code partial} means the tokens are missing;
+ * {@code degraded} marks lexical results served without tokens while ELSER inference is
+ * unavailable.
+ */
 public record SearchExplanation(
         String query,
         Map<String, Double> queryTokens,
-        List<ScoredResult> results
+        List<ScoredResult> results,
+        boolean partial,
+        boolean degraded
 ) {
     public record ScoredResult(
             Product product,
@@ -0,0 +1,20 @@
+package com.example.productsearch.model;
+
+import java.util.List;
+
+/**
+ * Non-scoring restrictions applied in {@code bool.filter}. {@code null} components are ignored.
+ * The price range is {@code [minPrice, maxPrice)}, like the buckets of the price facet, so a
+ * selected bucket does not also match products priced at the next bucket's lower bound.
+ */
+public record SearchFilters(
+        List<String> categories,
+        Double minPrice,
+        Double maxPrice
+) {
+    public static final SearchFilters NONE = new SearchFilters(null, null, null);
+
+    public boolean isEmpty() {
+        return (categories == null || categories.isEmpty()) && minPrice == null && maxPrice == null;
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.productsearch.model;
+
+import java.util.List;
+
+/**
+ * One page of search results. {@code cursor} is present when more results can be fetched by
+ * passing it back as the {@code cursor} request parameter. {@code degraded} marks lexical-only
+ * results served while ELSER inference is unavailable. {@code facets} is only computed for first
+ * pages that asked for it and is {@code null} otherwise.
+ */
+public record SearchPage(
+        List<Product> products,
+        long total,
+        String cursor,
+        boolean degraded,
+        Facets facets
+) {
+    public SearchPage {
+        products = List.copyOf(products);
+    }
+}
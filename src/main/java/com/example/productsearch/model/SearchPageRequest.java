@@ -0,0 +1,27 @@
+package com.example.productsearch.model;
+
+import java.util.List;
+
+/**
+ * Paging and source-filtering parameters of a search. {@code paginate} opens a point-in-time on
+ * the first page so that a cursor is returned; later pages are addressed by {@code cursor} alone.
+ * {@code null} size or fields fall back to the configured defaults. {@code filters} restrict every
+ * page and have to be passed again with the cursor, like the query; {@code facets} requests
+ * category and price aggregations on the first page.
+ */
+public record SearchPageRequest(
+        Integer size,
+        String cursor,
+        boolean paginate,
+        List<String> fields,
+        SearchFilters filters,
+        boolean facets
+) {
+    public SearchPageRequest {
+        filters = filters != null ? filters : SearchFilters.NONE;
+    }
+
+    public static SearchPageRequest firstPage() {
+        return new SearchPageRequest(null, null, false, null, SearchFilters.NONE, false);
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.productsearch.model;
+
+public record SuggestStats(
+        long phrases,
+        long keys,
+        long cachedPrefixes,
+        double cacheHitRate,
+        long searchFallbacks
+) {
+}
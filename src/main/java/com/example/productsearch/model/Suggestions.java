@@ -0,0 +1,6 @@
+package com.example.productsearch.model;
+
+import java.util.List;
+
+public record Suggestions(String prefix, List<String> suggestions) {
+}
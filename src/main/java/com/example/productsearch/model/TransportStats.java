@@ -0,0 +1,15 @@
+package com.example.productsearch.model;
+
+import java.util.Map;
+
+public record TransportStats(
+        Pool total,
+        Map<String, Pool> perHost
+) {
+    public record Pool(
+            int leased,
+            int pending,
+            int available,
+            int max
+    ) {}
+}
@@ -0,0 +1,118 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.transport.rest5_client.low_level.ResponseException;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AIMD limit on concurrent Elasticsearch search calls. Each call that completes under the latency
+ * threshold while the limit is in use raises the limit by {@code 1/limit} (about one per round
+ * trip); a slow call, a transport failure or a 429/5xx from the cluster multiplies it by the
+ * backoff ratio. Calls beyond the limit are rejected immediately rather than queued, so request
+ * threads never pile up behind a saturated cluster.
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private volatile double limit;
+
+    @Value("${search.limit.initial:20}")
+    private int initialLimit;
+
+    @Value("${search.limit.min:2}")
+    private int minLimit;
+
+    @Value("${search.limit.max:200}")
+    private int maxLimit;
+
+    @Value("${search.limit.latency-threshold-ms:1000}")
+    private long latencyThresholdMs;
+
+    @Value("${search.limit.backoff-ratio:0.9}")
+    private double backoffRatio;
+
+    @Value("${search.limit.retry-after-seconds:1}")
+    private long retryAfterSeconds;
+
+    @PostConstruct
+    void init() {
+        limit = initialLimit;
+    }
+
+    public <T> T execute(SearchCoalescer.Call<T> call) throws IOException {
+        int inFlightAtStart = acquire();
+        long start = System.nanoTime();
+        boolean overloaded = false;
+        try {
+            return call.call();
+        } catch (IOException | RuntimeException e) {
+            overloaded = isOverload(e);
+            throw e;
+        } finally {
+            inFlight.decrementAndGet();
+            adjust(inFlightAtStart, System.nanoTime() - start, overloaded);
+        }
+    }
+
+    /**
+     * Whether a failed call points at an overloaded or unreachable cluster: transport errors and
+     * timeouts, or a 429/5xx response. Rejected requests such as a 400 for a malformed query do not.
+     */
+    static boolean isOverload(Exception e) {
+        if (e instanceof ElasticsearchException es) {
+            return isOverloadStatus(es.status());
+        }
+        if (e instanceof ResponseException re) {
+            return isOverloadStatus(re.getResponse().getStatusCode());
+        }
+        return e instanceof IOException;
+    }
+
+    private static boolean isOverloadStatus(int status) {
+        return status == 429 || status >= 500;
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    private int acquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                rejected.increment();
+                throw new SearchOverloadedException("Search concurrency limit of " + (int) limit + " reached",
+                        retryAfterSeconds);
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    private synchronized void adjust(int inFlightAtStart, long latencyNanos, boolean overloaded) {
+        if (overloaded || latencyNanos > TimeUnit.MILLISECONDS.toNanos(latencyThresholdMs)) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else if (inFlightAtStart * 2 >= limit) {
+            // Only grow while the limit is actually being used, otherwise it drifts up while idle
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.example.productsearch.model.Product;
+import com.example.productsearch.model.SearchCacheStats;
+import com.example.productsearch.model.SearchPage;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Caffeine-backed result cache (W-TinyLFU admission and eviction) bounded by an estimate of the
+ * retained heap. Results computed shortly after a write are not stored, because Elasticsearch
+ * only makes the write visible after the next refresh and the entry would otherwise outlive it.
+ */
+public class CaffeineSearchResultCache implements SearchResultCache {
+
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+    private static final int PRODUCT_OVERHEAD_BYTES = 120;
+    private static final int HIT_OVERHEAD_BYTES = 160;
+
+    private final Cache<SearchCacheKey, Object> cache;
+    private final IndexGeneration indexGeneration;
+    private final long maxBytes;
+    private final long refreshGraceNanos;
+
+    public CaffeineSearchResultCache(IndexGeneration indexGeneration, long maxBytes, Duration ttl,
+                                     Duration refreshGrace) {
+        this.indexGeneration = indexGeneration;
+        this.maxBytes = maxBytes;
+        this.refreshGraceNanos = refreshGrace.toNanos();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((SearchCacheKey key, Object results) -> estimateBytes(key, results))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getIfPresent(SearchCacheKey key) {
+        return (T) cache.getIfPresent(key);
+    }
+
+    @Override
+    public <T> void put(SearchCacheKey key, T results) {
+        if (key.generation() != indexGeneration.current()
+                || indexGeneration.nanosSinceLastBump() < refreshGraceNanos) {
+            return;
+        }
+        cache.put(key, results instanceof List<?> list ? List.copyOf(list) : results);
+    }
+
+    @Override
+    public SearchCacheStats stats() {
+        CacheStats stats = cache.stats();
+        long weightedSize = cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+        return new SearchCacheStats(
+                true,
+                stats.hitCount(),
+                stats.missCount(),
+                stats.evictionCount(),
+                stats.hitRate(),
+                cache.estimatedSize(),
+                weightedSize,
+                maxBytes
+        );
+    }
+
+    private static int estimateBytes(SearchCacheKey key, Object value) {
+        long bytes = ENTRY_OVERHEAD_BYTES + chars(key.mode()) + chars(key.query()) + chars(key.params());
+        List<?> results = value instanceof SearchPage page ? page.products()
+                : value instanceof List<?> list ? list
+                : List.of(value);
+        for (Object result : results) {
+            if (result instanceof Product product) {
+                bytes += estimateBytes(product);
+            } else if (result instanceof Hit<?> hit) {
+                bytes += HIT_OVERHEAD_BYTES + chars(hit.id()) + chars(hit.index());
+                if (hit.source() instanceof Product product) {
+                    bytes += estimateBytes(product);
+                }
+            } else {
+                bytes += PRODUCT_OVERHEAD_BYTES;
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    private static long estimateBytes(Product product) {
+        return PRODUCT_OVERHEAD_BYTES
+                + chars(product.id())
+                + chars(product.name())
+                + chars(product.description())
+                + chars(product.category())
+                + chars(product.imageUrl());
+    }
+
+    private static long chars(String value) {
+        // Compact strings store Latin-1 text at one byte per char; assume the worst case
+        return value != null ? 40L + 2L * value.length() : 0;
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.transport.rest5_client.low_level.Request;
+import co.elastic.clients.transport.rest5_client.low_level.Response;
+import co.elastic.clients.transport.rest5_client.low_level.ResponseException;
+import co.elastic.clients.transport.rest5_client.low_level.ResponseListener;
+import co.elastic.clients.transport.rest5_client.low_level.Rest5Client;
+import com.example.productsearch.model.InferenceCacheStats;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * Talks to the ELSER {@code _inference} API. The sparse_embedding endpoint is resolved once and
+ * re-validated on a schedule instead of being probed per request, and query expansions are kept in
+ * a size- and TTL-bounded cache keyed by the normalized query text.
+ */
+@Service
+public class ElserInferenceService {
+
+    private static final Logger log = LoggerFactory.getLogger(ElserInferenceService.class);
+
+    private final Rest5Client restClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private AsyncCache<String, Map<String, Double>> tokenCache;
+    private volatile String inferenceId;
+
+    @Value("${elser.inference-id:.elser-2-elasticsearch}")
+    private String preferredInferenceId;
+
+    @Value("${elser.token-cache.max-size:10000}")
+    private long cacheMaxSize;
+
+    @Value("${elser.token-cache.ttl-minutes:60}")
+    private long cacheTtlMinutes;
+
+    @Value("${elser.token-cache.top-n:20}")
+    private int topN;
+
+    public ElserInferenceService(Rest5Client restClient) {
+        this.restClient = restClient;
+    }
+
+    @PostConstruct
+    void init() {
+        tokenCache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(Duration.ofMinutes(cacheTtlMinutes))
+                .recordStats()
+                .buildAsync();
+    }
+
+    /**
+     * Resolves the inference endpoint on startup and then periodically, so a redeployed or renamed
+     * ELSER endpoint is picked up without a restart.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${elser.revalidate-interval-ms:300000}")
+    public void revalidateEndpoint() {
+        try {
+            resolveEndpoint().join();
+        } catch (CompletionException e) {
+            log.warn("Could not resolve ELSER inference endpoint: {}", e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Returns the top-N ELSER tokens for the query, or an empty map when no inference endpoint is
+     * available. Empty results are not cached so that a recovered endpoint is used immediately.
+     */
+    public Map<String, Double> fetchTokens(String query) throws IOException {
+        try {
+            return fetchTokensAsync(query).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching ELSER tokens", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to fetch ELSER tokens", e.getCause());
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #fetchTokens}. Concurrent callers for the same query share one
+     * in-flight inference request through the cache.
+     */
+    public CompletableFuture<Map<String, Double>> fetchTokensAsync(String query) {
+        return tokenCache.get(normalize(query), (key, executor) -> infer(key)
+                        .thenApply(tokens -> tokens.isEmpty() ? null : tokens))
+                .thenApply(tokens -> tokens != null ? tokens : Map.of());
+    }
+
+    public InferenceCacheStats stats() {
+        CacheStats stats = tokenCache.synchronous().stats();
+        return new InferenceCacheStats(
+                inferenceId,
+                stats.hitCount(),
+                stats.missCount(),
+                stats.evictionCount(),
+                stats.hitRate(),
+                tokenCache.synchronous().estimatedSize()
+        );
+    }
+
+    private CompletableFuture<Map<String, Double>> infer(String query) {
+        CompletableFuture<String> endpointId = inferenceId != null
+                ? CompletableFuture.completedFuture(inferenceId)
+                : resolveEndpoint();
+
+        return endpointId.thenCompose(id -> {
+            if (id == null) {
+                log.warn("No ELSER inference endpoint found, returning empty tokens");
+                return CompletableFuture.completedFuture(Map.of());
+            }
+            return postInference(id, query).thenCompose(response -> {
+                if (response.getStatusCode() != 404) {
+                    return CompletableFuture.completedFuture(toTokens(id, response));
+                }
+                // The endpoint was removed since the last validation; resolve again and retry once
+                log.info("Inference endpoint '{}' no longer exists, re-resolving", id);
+                inferenceId = null;
+                return resolveEndpoint().thenCompose(retryId -> retryId == null
+                        ? CompletableFuture.completedFuture(Map.<String, Double>of())
+                        : postInference(retryId, query).thenApply(retry -> toTokens(retryId, retry)));
+            });
+        });
+    }
+
+    private Map<String, Double> toTokens(String endpointId, Response response) {
+        if (response.getStatusCode() != 200) {
+            log.warn("Inference endpoint '{}' returned status {}", endpointId, response.getStatusCode());
+            return Map.of();
+        }
+        try {
+            return parseElserTokens(body(response));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private CompletableFuture<Response> postInference(String endpointId, String query) {
+        Request request = new Request("POST", "/_inference/sparse_embedding/" + endpointId);
+        try {
+            request.setJsonEntity(objectMapper.writeValueAsString(Map.of("input", List.of(query))));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return perform(request);
+    }
+
+    private CompletableFuture<String> resolveEndpoint() {
+        return perform(new Request("GET", "/_inference/sparse_embedding"))
+                .thenApply(listResponse -> {
+                    if (listResponse.getStatusCode() != 200) {
+                        log.debug("Inference endpoint discovery returned status {}", listResponse.getStatusCode());
+                        return inferenceId;
+                    }
+                    try {
+                        return selectEndpoint(objectMapper.readTree(body(listResponse)).get("endpoints"));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * Sends the request over the shared Elasticsearch connection pool. Error statuses complete the
+     * future normally so callers can branch on them; only transport failures complete exceptionally.
+     */
+    private CompletableFuture<Response> perform(Request request) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        restClient.performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                future.complete(response);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                if (exception instanceof ResponseException responseException) {
+                    future.complete(responseException.getResponse());
+                } else {
+                    future.completeExceptionally(exception);
+                }
+            }
+        });
+        return future;
+    }
+
+    private static String body(Response response) throws IOException {
+        try (InputStream in = response.getEntity().getContent()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private String selectEndpoint(JsonNode endpoints) {
+        String resolved = null;
+        if (endpoints != null && endpoints.isArray()) {
+            for (JsonNode endpoint : endpoints) {
+                String id = endpoint.path("inference_id").asText();
+                if (preferredInferenceId.equals(id)) {
+                    resolved = id;
+                    break;
+                }
+                if (resolved == null && !id.isEmpty()) {
+                    resolved = id;
+                }
+            }
+        }
+
+        if (!Objects.equals(resolved, inferenceId)) {
+            log.info("Resolved ELSER inference endpoint: {}", resolved);
+        }
+        inferenceId = resolved;
+        return resolved;
+    }
+
+    Map<String, Double> parseElserTokens(String responseBody) throws IOException {
+        JsonNode root = objectMapper.readTree(responseBody);
+        // Response format: { "sparse_embedding": [ { "is_truncated": false, "embedding": { token: weight, ... } } ] }
+        JsonNode sparseEmbedding = root.at("/sparse_embedding/0/embedding");
+        if (sparseEmbedding.isMissingNode()) {
+            // Try alternate response formats
+            sparseEmbedding = root.at("/sparse_embedding/0");
+        }
+        if (sparseEmbedding.isMissingNode()) {
+            sparseEmbedding = root.at("/results/0/sparse_embedding");
+        }
+        if (sparseEmbedding.isMissingNode()) {
+            log.warn("Could not parse ELSER tokens from response");
+            return Map.of();
+        }
+
+        Map<String, Double> tokens = new LinkedHashMap<>();
+        sparseEmbedding.fields().forEachRemaining(entry ->
+                tokens.put(entry.getKey(), entry.getValue().asDouble())
+        );
+
+        // Sort by weight descending and take top N
+        return tokens.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(topN)
+                .collect(Collectors.toMap(
+                        Map.Entry::getKey,
+                        Map.Entry::getValue,
+                        (a, b) -> a,
+                        LinkedHashMap::new
+                ));
+    }
+
+    private static String normalize(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.productsearch.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonic counter bumped on every write to the products index. Cached search results are keyed
+ * by the generation they were computed at, so a write makes every earlier entry unreachable.
+ */
+@Component
+public class IndexGeneration {
+
+    private final AtomicLong generation = new AtomicLong();
+    private volatile long lastBumpNanos = System.nanoTime();
+
+    public long current() {
+        return generation.get();
+    }
+
+    public void bump() {
+        lastBumpNanos = System.nanoTime();
+        generation.incrementAndGet();
+    }
+
+    public long nanosSinceLastBump() {
+        return System.nanoTime() - lastBumpNanos;
+    }
+}
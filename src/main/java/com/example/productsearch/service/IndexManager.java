@@ -0,0 +1,176 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.mapping.DateProperty;
+import co.elastic.clients.elasticsearch._types.mapping.DoubleNumberProperty;
+import co.elastic.clients.elasticsearch._types.mapping.KeywordProperty;
+import co.elastic.clients.elasticsearch._types.mapping.Property;
+import co.elastic.clients.elasticsearch._types.mapping.SearchAsYouTypeProperty;
+import co.elastic.clients.elasticsearch._types.mapping.SemanticTextProperty;
+import co.elastic.clients.elasticsearch._types.mapping.TextProperty;
+import co.elastic.clients.elasticsearch._types.mapping.TypeMapping;
+import co.elastic.clients.elasticsearch.indices.GetAliasResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Owns the physical layout of the product index. Data lives in versioned indices
+ * ({@code products-v1}, {@code products-v2}, ...); searches go through the read alias
+ * {@value ProductService#INDEX_NAME} and writes through the write alias {@value #WRITE_ALIAS}, so
+ * a reindex can build the next version while the current one keeps serving.
+ * <p>
+ * A concrete index named {@code products} from before aliases were introduced is kept as is and
+ * given the write alias; the first reindex migrates it.
+ */
+@Service
+public class IndexManager {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexManager.class);
+
+    static final String WRITE_ALIAS = "products-write";
+    static final String VERSION_PREFIX = "products-v";
+
+    private final ElasticsearchClient esClient;
+    private final ProductChangeDetector changeDetector;
+
+    public IndexManager(ElasticsearchClient esClient, ProductChangeDetector changeDetector) {
+        this.esClient = esClient;
+        this.changeDetector = changeDetector;
+    }
+
+    /**
+     * Creates {@code products-v1} behind both aliases if nothing exists yet, and adds the write
+     * alias to a legacy concrete index.
+     */
+    public void ensureIndex() throws IOException {
+        if (esClient.indices().existsAlias(e -> e.name(ProductService.INDEX_NAME)).value()) {
+            log.info("Alias '{}' already exists", ProductService.INDEX_NAME);
+            return;
+        }
+        if (esClient.indices().exists(e -> e.index(ProductService.INDEX_NAME)).value()) {
+            if (!esClient.indices().existsAlias(e -> e.name(WRITE_ALIAS)).value()) {
+                esClient.indices().putAlias(a -> a.index(ProductService.INDEX_NAME).name(WRITE_ALIAS));
+            }
+            log.info("Using legacy index '{}'; run a reindex to move it to a versioned index",
+                    ProductService.INDEX_NAME);
+            return;
+        }
+
+        String index = VERSION_PREFIX + 1;
+        esClient.indices().create(c -> c
+                .index(index)
+                .mappings(mapping())
+                .aliases(ProductService.INDEX_NAME, a -> a)
+                .aliases(WRITE_ALIAS, a -> a.isWriteIndex(true))
+        );
+        changeDetector.clear();
+        log.info("Index '{}' created with semantic_text mapping behind aliases '{}' and '{}'",
+                index, ProductService.INDEX_NAME, WRITE_ALIAS);
+    }
+
+    /**
+     * Creates the next index version with settings for bulk loading: no refreshes and no replicas.
+     */
+    public String createNextVersion() throws IOException {
+        int latest = 0;
+        for (String index : esClient.indices().get(g -> g
+                .index(VERSION_PREFIX + "*")
+                .allowNoIndices(true)).indices().keySet()) {
+            try {
+                latest = Math.max(latest, Integer.parseInt(index.substring(VERSION_PREFIX.length())));
+            } catch (NumberFormatException e) {
+                // Not one of ours
+            }
+        }
+        String index = VERSION_PREFIX + (latest + 1);
+        esClient.indices().create(c -> c
+                .index(index)
+                .mappings(mapping())
+                .settings(s -> s
+                        .refreshInterval(t -> t.time("-1"))
+                        .numberOfReplicas("0")
+                )
+        );
+        log.info("Index '{}' created for reindexing", index);
+        return index;
+    }
+
+    public String readIndex() throws IOException {
+        return aliasTarget(ProductService.INDEX_NAME);
+    }
+
+    public String writeIndex() throws IOException {
+        return aliasTarget(WRITE_ALIAS);
+    }
+
+    /**
+     * Points the write alias at {@code target} in one atomic alias update.
+     */
+    public void moveWriteAlias(String source, String target) throws IOException {
+        esClient.indices().updateAliases(u -> u
+                .actions(a -> a.remove(r -> r.index(source).alias(WRITE_ALIAS)))
+                .actions(a -> a.add(ad -> ad.index(target).alias(WRITE_ALIAS).isWriteIndex(true)))
+        );
+        // Cached hashes describe documents in the source index
+        changeDetector.clear();
+        log.info("Write alias '{}' moved from '{}' to '{}'", WRITE_ALIAS, source, target);
+    }
+
+    /**
+     * Points the read alias at {@code target} in one atomic alias update. A legacy concrete index
+     * has to be removed in the same update because the alias takes over its name.
+     */
+    public void swapReadAlias(String source, String target) throws IOException {
+        boolean legacy = source.equals(ProductService.INDEX_NAME);
+        esClient.indices().updateAliases(u -> {
+            if (legacy) {
+                u.actions(a -> a.removeIndex(r -> r.index(source)));
+            } else {
+                u.actions(a -> a.remove(r -> r.index(source).alias(ProductService.INDEX_NAME)));
+            }
+            return u.actions(a -> a.add(ad -> ad.index(target).alias(ProductService.INDEX_NAME)));
+        });
+        log.info("Read alias '{}' moved from '{}' to '{}'{}", ProductService.INDEX_NAME, source, target,
+                legacy ? " (legacy index removed)" : "");
+    }
+
+    private String aliasTarget(String alias) throws IOException {
+        if (!esClient.indices().existsAlias(e -> e.name(alias)).value()) {
+            // Legacy layout: the name is the concrete index itself
+            return alias;
+        }
+        GetAliasResponse response = esClient.indices().getAlias(g -> g.name(alias));
+        Set<String> indices = response.aliases().keySet();
+        if (indices.size() != 1) {
+            throw new IllegalStateException("Alias '" + alias + "' points to " + indices);
+        }
+        return indices.iterator().next();
+    }
+
+    private static TypeMapping mapping() {
+        return TypeMapping.of(m -> m
+                .properties("id", Property.of(p -> p.keyword(KeywordProperty.of(k -> k))))
+                // name.suggest backs the typeahead fallback; indices created before it need a reindex
+                .properties("name", Property.of(p -> p.text(TextProperty.of(t -> t
+                        .fields("suggest", Property.of(f -> f.searchAsYouType(SearchAsYouTypeProperty.of(s -> s))))
+                ))))
+                .properties("description", Property.of(p -> p.semanticText(
+                        SemanticTextProperty.of(st -> st)
+                )))
+                .properties("category", Property.of(p -> p.keyword(KeywordProperty.of(k -> k))))
+                .properties("price", Property.of(p -> p.double_(DoubleNumberProperty.of(d -> d))))
+                .properties("image_url", Property.of(p -> p.keyword(KeywordProperty.of(k -> k))))
+                // Only read back through _source for change detection
+                .properties("content_hash", Property.of(p -> p.keyword(KeywordProperty.of(k -> k
+                        .index(false).docValues(false)))))
+                .properties("doc_hash", Property.of(p -> p.keyword(KeywordProperty.of(k -> k
+                        .index(false).docValues(false)))))
+                // Range-queried by a reindex to replay writes made while it copied
+                .properties("indexed_at", Property.of(p -> p.date(DateProperty.of(d -> d))))
+        );
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.productsearch.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker for searches that need ELSER inference. Failed and slow calls are counted over
+ * a sliding window of recent calls; once the failure rate crosses the threshold the breaker opens
+ * and callers fall back to lexical search. After the open period a single probe is let through:
+ * if it succeeds the breaker closes, otherwise it opens again. Only errors that
+ * {@link AdaptiveConcurrencyLimiter} treats as overload count as failures.
+ */
+@Component
+public class InferenceCircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(InferenceCircuitBreaker.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    @Value("${search.breaker.window-size:20}")
+    private int windowSize;
+
+    @Value("${search.breaker.failure-rate-threshold:0.5}")
+    private double failureRateThreshold;
+
+    @Value("${search.breaker.slow-call-ms:2000}")
+    private long slowCallMs;
+
+    @Value("${search.breaker.open-duration-ms:10000}")
+    private long openDurationMs;
+
+    // All state below is guarded by this
+    private boolean[] window;
+    private int next;
+    private int recorded;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAtNanos;
+    private long probeStartedAtNanos;
+    private boolean probeInFlight;
+
+    @PostConstruct
+    void init() {
+        window = new boolean[windowSize];
+    }
+
+    /**
+     * Whether an inference-backed call may be made now. In the half-open state only one probe is
+     * admitted; a probe that never reports an outcome is replaced after the open duration.
+     */
+    public synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        long openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMs);
+        if (state == State.OPEN) {
+            if (now - openedAtNanos < openDurationNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probeInFlight && now - probeStartedAtNanos < openDurationNanos) {
+                return false;
+            }
+            probeInFlight = true;
+            probeStartedAtNanos = now;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess(long latencyNanos) {
+        if (latencyNanos > TimeUnit.MILLISECONDS.toNanos(slowCallMs)) {
+            onFailure();
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            close();
+        } else {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+    }
+
+    /**
+     * Reports a failed call. Overload errors count as failures; anything else, such as a 400 for a
+     * malformed query, says nothing about inference and only frees the probe slot.
+     */
+    public synchronized void onError(Exception e) {
+        if (AdaptiveConcurrencyLimiter.isOverload(e)) {
+            onFailure();
+        } else if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+        }
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    /**
+     * Seconds until the next probe is admitted, for {@code Retry-After}.
+     */
+    public synchronized long retryAfterSeconds() {
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMs) - (System.nanoTime() - openedAtNanos);
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remainingNanos) + 1);
+    }
+
+    private void record(boolean failure) {
+        if (recorded == windowSize) {
+            if (window[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        window[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % windowSize;
+        // Checked on successes too: the call that fills the window can be the one that decides
+        if (state == State.CLOSED && recorded == windowSize && failures >= failureRateThreshold * windowSize) {
+            open();
+        }
+    }
+
+    private void open() {
+        log.warn("Inference circuit breaker opened ({} of last {} calls failed or slow), serving lexical results",
+                failures, recorded);
+        state = State.OPEN;
+        openedAtNanos = System.nanoTime();
+        probeInFlight = false;
+    }
+
+    private void close() {
+        log.info("Inference circuit breaker closed, semantic search restored");
+        state = State.CLOSED;
+        probeInFlight = false;
+        next = 0;
+        recorded = 0;
+        failures = 0;
+        Arrays.fill(window, false);
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.productsearch.service;
+
+import com.example.productsearch.model.SearchCacheStats;
+
+public class NoOpSearchResultCache implements SearchResultCache {
+
+    @Override
+    public <T> T getIfPresent(SearchCacheKey key) {
+        return null;
+    }
+
+    @Override
+    public <T> void put(SearchCacheKey key, T results) {
+    }
+
+    @Override
+    public SearchCacheStats stats() {
+        return new SearchCacheStats(false, 0, 0, 0, 0.0, 0, 0, 0);
+    }
+}
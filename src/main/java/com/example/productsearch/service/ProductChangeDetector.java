@@ -0,0 +1,193 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.MgetResponse;
+import co.elastic.clients.elasticsearch.core.get.GetResult;
+import co.elastic.clients.elasticsearch.core.mget.MultiGetResponseItem;
+import com.example.productsearch.model.Product;
+import com.example.productsearch.model.ProductDocument;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Decides per product whether a write is needed, so unchanged descriptions are not sent through
+ * ELSER again. The stored hashes are fetched from the index with one {@code _mget} per batch, so
+ * writes from other instances or from outside the application are taken into account.
+ * <p>
+ * A local cache of written hashes can save the {@code _mget} when this instance is the only
+ * writer. It is off by default ({@code ingest.change-detection.cache-ttl-seconds=0}); when
+ * enabled, entries expire after the TTL, which bounds how long an outside change can be missed.
+ */
+@Component
+public class ProductChangeDetector {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductChangeDetector.class);
+
+    public enum Action {
+        /** Not in the index yet. */
+        CREATE,
+        /** Embedding-relevant fields changed; the document is replaced and re-inferred. */
+        REINDEX,
+        /** Only other fields changed; a partial update keeps the existing embeddings. */
+        UPDATE,
+        /** Identical to the indexed document. */
+        SKIP
+    }
+
+    public record Change(ProductDocument document, Action action) {
+    }
+
+    private final ElasticsearchClient esClient;
+    private Cache<String, ProductDocument.Hashes> knownHashes;
+
+    @Value("${ingest.change-detection.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ingest.change-detection.cache-size:100000}")
+    private long cacheSize;
+
+    @Value("${ingest.change-detection.cache-ttl-seconds:0}")
+    private long cacheTtlSeconds;
+
+    public ProductChangeDetector(ElasticsearchClient esClient) {
+        this.esClient = esClient;
+    }
+
+    @PostConstruct
+    void init() {
+        knownHashes = Caffeine.newBuilder()
+                .maximumSize(cacheTtlSeconds > 0 ? cacheSize : 0)
+                .expireAfterWrite(Duration.ofSeconds(Math.max(cacheTtlSeconds, 1)))
+                .build();
+    }
+
+    public List<Change> classify(List<Product> products) {
+        List<ProductDocument> documents = new ArrayList<>(products.size());
+        for (Product product : products) {
+            documents.add(ProductDocument.of(product, hash(product)));
+        }
+        if (!enabled) {
+            return documents.stream().map(doc -> new Change(doc, Action.CREATE)).toList();
+        }
+
+        Map<String, ProductDocument.Hashes> stored = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (ProductDocument doc : documents) {
+            ProductDocument.Hashes hashes = cacheTtlSeconds > 0 ? knownHashes.getIfPresent(doc.id()) : null;
+            if (hashes != null) {
+                stored.put(doc.id(), hashes);
+            } else {
+                misses.add(doc.id());
+            }
+        }
+        if (!misses.isEmpty()) {
+            stored.putAll(fetchHashes(misses));
+        }
+
+        List<Change> changes = new ArrayList<>(documents.size());
+        for (ProductDocument doc : documents) {
+            changes.add(new Change(doc, action(stored.get(doc.id()), doc.hashes())));
+        }
+        return changes;
+    }
+
+    /**
+     * Records the hashes of a document after Elasticsearch acknowledged the write.
+     */
+    public void written(ProductDocument document) {
+        remember(document.id(), document.hashes());
+    }
+
+    /**
+     * Drops the cached hashes of one document, e.g. after a partial update found it missing.
+     */
+    public void forget(String id) {
+        knownHashes.invalidate(id);
+    }
+
+    /**
+     * Drops all cached hashes, e.g. after the index was recreated.
+     */
+    public void clear() {
+        knownHashes.invalidateAll();
+    }
+
+    private static Action action(ProductDocument.Hashes stored, ProductDocument.Hashes current) {
+        if (stored == null || stored.contentHash() == null) {
+            return Action.CREATE;
+        }
+        if (!stored.contentHash().equals(current.contentHash())) {
+            return Action.REINDEX;
+        }
+        return current.docHash().equals(stored.docHash()) ? Action.SKIP : Action.UPDATE;
+    }
+
+    /**
+     * Returns the stored hashes of the documents that exist. If the lookup fails every document is
+     * treated as new, which costs inference but never loses a write.
+     */
+    private Map<String, ProductDocument.Hashes> fetchHashes(List<String> ids) {
+        Map<String, ProductDocument.Hashes> hashes = new HashMap<>();
+        try {
+            MgetResponse<ProductDocument.Hashes> response = esClient.mget(m -> m
+                            .index(IndexManager.WRITE_ALIAS)
+                            .ids(ids)
+                            .sourceIncludes("content_hash", "doc_hash"),
+                    ProductDocument.Hashes.class
+            );
+            for (MultiGetResponseItem<ProductDocument.Hashes> item : response.docs()) {
+                if (item.isResult()) {
+                    GetResult<ProductDocument.Hashes> result = item.result();
+                    if (result.found() && result.source() != null) {
+                        hashes.put(result.id(), result.source());
+                        remember(result.id(), result.source());
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Hash lookup for {} products failed, indexing them in full: {}", ids.size(), e.getMessage());
+        }
+        return hashes;
+    }
+
+    private void remember(String id, ProductDocument.Hashes hashes) {
+        if (cacheTtlSeconds > 0) {
+            knownHashes.put(id, hashes);
+        }
+    }
+
+    static ProductDocument.Hashes hash(Product product) {
+        // description is the only semantic_text field, so it alone decides whether ELSER must run
+        String contentHash = digest(product.description());
+        String docHash = digest(product.id(), product.name(), product.description(), product.category(),
+                Double.toString(product.price()), product.imageUrl());
+        return new ProductDocument.Hashes(contentHash, docHash);
+    }
+
+    private static String digest(String... fields) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (String field : fields) {
+            // Separator and null marker keep ("ab", "c") and ("a", "bc") or null and "" apart
+            digest.update(field != null ? field.getBytes(StandardCharsets.UTF_8) : new byte[]{0x01});
+            digest.update((byte) 0x00);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
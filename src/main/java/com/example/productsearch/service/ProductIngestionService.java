@@ -0,0 +1,409 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkIngester;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkListener;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import com.example.productsearch.model.IngestionResult;
+import com.example.productsearch.model.IngestionStats;
+import com.example.productsearch.model.Product;
+import com.example.productsearch.model.ProductDocument;
+import com.example.productsearch.service.ProductChangeDetector.Action;
+import com.example.productsearch.service.ProductChangeDetector.Change;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streams products into Elasticsearch through a {@link BulkIngester}. Batches are flushed by
+ * operation count, byte size or interval; {@code add} blocks once the configured number of bulk
+ * requests is in flight, which propagates backpressure to whatever is producing the documents.
+ * Items rejected with 429 are re-queued with exponential backoff.
+ * <p>
+ * Products are classified in batches by {@link ProductChangeDetector} before they are queued:
+ * unchanged products are skipped and products whose description is unchanged get a partial
+ * update, so ELSER only runs for new or rewritten descriptions.
+ */
+@Service
+public class ProductIngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductIngestionService.class);
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    private final ElasticsearchClient esClient;
+    private final IndexGeneration indexGeneration;
+    private final ProductChangeDetector changeDetector;
+    private final SuggestionService suggestions;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "bulk-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder totalIndexed = new LongAdder();
+    private final LongAdder totalSkipped = new LongAdder();
+    private final LongAdder totalFailed = new LongAdder();
+    private final LongAdder totalRetried = new LongAdder();
+    private final AtomicReference<IngestionResult> lastRun = new AtomicReference<>();
+
+    @Value("${ingest.bulk.max-operations:500}")
+    private int maxOperations;
+
+    @Value("${ingest.bulk.max-size-bytes:5242880}")
+    private long maxSizeBytes;
+
+    @Value("${ingest.bulk.max-concurrent-requests:4}")
+    private int maxConcurrentRequests;
+
+    @Value("${ingest.bulk.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    @Value("${ingest.bulk.max-retries:5}")
+    private int maxRetries;
+
+    @Value("${ingest.bulk.retry-backoff-ms:200}")
+    private long retryBackoffMs;
+
+    public ProductIngestionService(ElasticsearchClient esClient, IndexGeneration indexGeneration,
+                                   ProductChangeDetector changeDetector, SuggestionService suggestions) {
+        this.esClient = esClient;
+        this.indexGeneration = indexGeneration;
+        this.changeDetector = changeDetector;
+        this.suggestions = suggestions;
+    }
+
+    public IngestionResult ingest(Iterator<Product> products) {
+        IngestionRun run = new IngestionRun();
+        BulkIngester<PendingDocument> ingester = BulkIngester.of(b -> b
+                .client(esClient)
+                .maxOperations(maxOperations)
+                .maxSize(maxSizeBytes)
+                .maxConcurrentRequests(maxConcurrentRequests)
+                .flushInterval(flushIntervalMs, TimeUnit.MILLISECONDS)
+                .listener(run)
+        );
+        run.ingester = ingester;
+
+        try {
+            List<Product> batch = new ArrayList<>(maxOperations);
+            while (products.hasNext()) {
+                Product product;
+                try {
+                    product = products.next();
+                } catch (MalformedLineException e) {
+                    run.fail(e.getMessage());
+                    continue;
+                }
+                if (product == null || product.id() == null || product.id().isBlank()) {
+                    run.fail("Skipped product without id");
+                    continue;
+                }
+                run.submitted.increment();
+                batch.add(product);
+                if (batch.size() == maxOperations) {
+                    run.submit(batch);
+                    batch.clear();
+                }
+            }
+            run.submit(batch);
+            // Send the last partial batch now instead of waiting for the flush interval
+            ingester.flush();
+            run.awaitCompletion();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Bulk ingestion interrupted after {} submitted documents", run.submitted.sum());
+        } finally {
+            ingester.close();
+        }
+
+        IngestionResult result = run.toResult();
+        record(result);
+        log.info("Bulk ingestion finished: {} created, {} updated, {} skipped, {} failed, {} retried in {} ms ({} docs/s)",
+                result.created(), result.updated(), result.skipped(), result.failed(), result.retried(),
+                result.elapsedMillis(), String.format("%.1f", result.docsPerSecond()));
+        return result;
+    }
+
+    /**
+     * Ingests one product per line. A line that is not a valid product is counted as failed with
+     * its line number and the rest of the body is still ingested.
+     */
+    public IngestionResult ingestNdjson(InputStream body) throws IOException {
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            return ingest(new NdjsonProducts(lines, objectMapper.readerFor(Product.class)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public IngestionStats stats() {
+        return new IngestionStats(
+                runs.sum(),
+                totalIndexed.sum(),
+                totalSkipped.sum(),
+                totalFailed.sum(),
+                totalRetried.sum(),
+                lastRun.get()
+        );
+    }
+
+    @PreDestroy
+    void shutdown() {
+        retryScheduler.shutdownNow();
+    }
+
+    private void record(IngestionResult result) {
+        runs.increment();
+        totalIndexed.add(result.indexed());
+        totalSkipped.add(result.skipped());
+        totalFailed.add(result.failed());
+        totalRetried.add(result.retried());
+        lastRun.set(result);
+    }
+
+    private record PendingDocument(ProductDocument document, Action action, int attempt) {
+    }
+
+    /**
+     * Thrown by {@link NdjsonProducts#next()} for a line that cannot be read as a product.
+     */
+    private static final class MalformedLineException extends RuntimeException {
+        MalformedLineException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Parses NDJSON one line at a time, skipping blank lines, so a malformed line fails on its own
+     * instead of leaving the parser in an unknown state for the lines after it.
+     */
+    private static final class NdjsonProducts implements Iterator<Product> {
+
+        private final BufferedReader lines;
+        private final ObjectReader reader;
+        private String line;
+        private long lineNumber;
+
+        NdjsonProducts(BufferedReader lines, ObjectReader reader) {
+            this.lines = lines;
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (line == null) {
+                    String next = lines.readLine();
+                    if (next == null) {
+                        return false;
+                    }
+                    lineNumber++;
+                    if (!next.isBlank()) {
+                        line = next;
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public Product next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String current = line;
+            line = null;
+            try {
+                return reader.readValue(current);
+            } catch (JsonProcessingException e) {
+                throw new MalformedLineException("Line " + lineNumber + ": " + e.getOriginalMessage());
+            }
+        }
+    }
+
+    /**
+     * Per-call bookkeeping. {@code outstanding} counts documents handed to the ingester that have
+     * not reached a terminal state yet, including those waiting for a retry, so the caller only
+     * returns once every document has been indexed or given up on.
+     */
+    private final class IngestionRun implements BulkListener<PendingDocument> {
+
+        private final long startNanos = System.nanoTime();
+        private final LongAdder submitted = new LongAdder();
+        private final LongAdder created = new LongAdder();
+        private final LongAdder updated = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder retried = new LongAdder();
+        private final LongAdder bulkRequests = new LongAdder();
+        private final AtomicLong outstanding = new AtomicLong();
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        private volatile BulkIngester<PendingDocument> ingester;
+
+        void submit(List<Product> batch) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            for (Change change : changeDetector.classify(batch)) {
+                if (change.action() == Action.SKIP) {
+                    skipped.increment();
+                    suggestions.recordProduct(change.document().name());
+                } else {
+                    add(new PendingDocument(change.document(), change.action(), 0));
+                }
+            }
+        }
+
+        void add(PendingDocument doc) {
+            outstanding.incrementAndGet();
+            ProductDocument document = doc.document();
+            if (doc.action() == Action.UPDATE) {
+                ingester.add(op -> op.update(u -> u
+                        .index(IndexManager.WRITE_ALIAS)
+                        .id(document.id())
+                        .action(a -> a.doc(document.nonSemanticFields()))
+                ), doc);
+            } else {
+                ingester.add(op -> op.index(i -> i
+                        .index(IndexManager.WRITE_ALIAS)
+                        .id(document.id())
+                        .document(document)
+                ), doc);
+            }
+        }
+
+        synchronized void awaitCompletion() throws InterruptedException {
+            while (outstanding.get() > 0) {
+                wait(flushIntervalMs);
+            }
+        }
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request, List<PendingDocument> contexts) {
+            bulkRequests.increment();
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, List<PendingDocument> contexts,
+                              BulkResponse response) {
+            indexGeneration.bump();
+            List<BulkResponseItem> items = response.items();
+            for (int i = 0; i < items.size(); i++) {
+                BulkResponseItem item = items.get(i);
+                PendingDocument doc = contexts.get(i);
+                if (item.error() == null) {
+                    switch (Objects.requireNonNullElse(item.result(), "updated")) {
+                        case "created" -> created.increment();
+                        case "noop" -> skipped.increment();
+                        default -> updated.increment();
+                    }
+                    changeDetector.written(doc.document());
+                    suggestions.recordProduct(doc.document().name());
+                    complete();
+                } else if (item.status() == 429) {
+                    retryOrFail(doc, "rejected (429)");
+                } else if (item.status() == 404 && doc.action() == Action.UPDATE) {
+                    writeInFull(doc);
+                } else {
+                    fail("Product '" + doc.document().id() + "': " + item.error().reason());
+                    complete();
+                }
+            }
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, List<PendingDocument> contexts,
+                              Throwable failure) {
+            log.warn("Bulk request {} with {} operations failed: {}", executionId, contexts.size(), failure.getMessage());
+            for (PendingDocument doc : contexts) {
+                retryOrFail(doc, failure.getMessage());
+            }
+        }
+
+        private void retryOrFail(PendingDocument doc, String reason) {
+            if (doc.attempt() >= maxRetries) {
+                fail("Product '" + doc.document().id() + "' gave up after " + doc.attempt() + " retries: " + reason);
+                complete();
+                return;
+            }
+            retried.increment();
+            long delay = retryBackoffMs << Math.min(doc.attempt(), 10);
+            retryScheduler.schedule(() -> {
+                // The document is re-added before it is released so the count never touches zero in between
+                add(new PendingDocument(doc.document(), doc.action(), doc.attempt() + 1));
+                complete();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * A partial update found no document: it was deleted since it was classified, e.g. by
+         * another writer, so the product is sent again as a full index operation.
+         */
+        private void writeInFull(PendingDocument doc) {
+            changeDetector.forget(doc.document().id());
+            retryScheduler.execute(() -> {
+                add(new PendingDocument(doc.document(), Action.CREATE, doc.attempt()));
+                complete();
+            });
+        }
+
+        private void fail(String message) {
+            failed.increment();
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(message);
+            }
+        }
+
+        private void complete() {
+            if (outstanding.decrementAndGet() == 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        IngestionResult toResult() {
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            long indexedCount = created.sum() + updated.sum();
+            double docsPerSecond = elapsedMillis > 0 ? indexedCount * 1000.0 / elapsedMillis : indexedCount;
+            return new IngestionResult(
+                    submitted.sum(),
+                    indexedCount,
+                    created.sum(),
+                    updated.sum(),
+                    skipped.sum(),
+                    failed.sum(),
+                    retried.sum(),
+                    bulkRequests.sum(),
+                    elapsedMillis,
+                    docsPerSecond,
+                    List.copyOf(errors)
+            );
+        }
+    }
+}
@@ -1,269 +1,984 @@
 package com.example.productsearch.service;
 
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
-import co.elastic.clients.elasticsearch._types.mapping.Property;
-import co.elastic.clients.elasticsearch._types.mapping.SemanticTextProperty;
-import co.elastic.clients.elasticsearch._types.mapping.TextProperty;
-import co.elastic.clients.elasticsearch._types.mapping.KeywordProperty;
-import co.elastic.clients.elasticsearch._types.mapping.DoubleNumberProperty;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.HistogramBucket;
+import co.elastic.clients.elasticsearch._types.aggregations.StringTermsBucket;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
 import co.elastic.clients.elasticsearch.core.IndexResponse;
+import co.elastic.clients.elasticsearch.core.MsearchResponse;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.UpdateResponse;
+import co.elastic.clients.elasticsearch.core.msearch.MultiSearchResponseItem;
+import co.elastic.clients.elasticsearch.core.msearch.RequestItem;
 import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.HitsMetadata;
+import co.elastic.clients.json.JsonpDeserializer;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.json.JsonpUtils;
+import co.elastic.clients.transport.rest5_client.low_level.Request;
+import co.elastic.clients.transport.rest5_client.low_level.Response;
+import co.elastic.clients.transport.rest5_client.low_level.Rest5Client;
+import com.example.productsearch.model.BatchSearchRequest;
+import com.example.productsearch.model.BatchSearchResponse;
+import com.example.productsearch.model.CoalescingStats;
+import com.example.productsearch.model.Facets;
+import com.example.productsearch.model.FusedResult;
 import com.example.productsearch.model.Product;
+import com.example.productsearch.model.ProductDocument;
+import com.example.productsearch.model.ResilienceStats;
+import com.example.productsearch.model.RrfOptions;
+import com.example.productsearch.model.RrfSearchResponse;
+import com.example.productsearch.model.SearchCacheStats;
 import com.example.productsearch.model.SearchExplanation;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.productsearch.model.SearchFilters;
+import com.example.productsearch.model.SearchPage;
+import com.example.productsearch.model.SearchPageRequest;
+import jakarta.json.stream.JsonParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.io.InputStream;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 public class ProductService {
 
     private static final Logger log = LoggerFactory.getLogger(ProductService.class);
-    private static final String INDEX_NAME = "products";
+    /** Read alias; see {@link IndexManager}. */
+    static final String INDEX_NAME = "products";
+    private static final String LEXICAL_MODE = "lexical";
+    private static final String CATEGORY_FACET = "categories";
+    private static final String PRICE_FACET = "prices";
+    private static final String FACET_BUCKETS = "buckets";
+    private static final JsonpDeserializer<SearchResponse<Product>> SEARCH_RESPONSE =
+            SearchResponse.createSearchResponseDeserializer(JsonpDeserializer.of(Product.class));
 
     private final ElasticsearchClient esClient;
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final ElasticsearchAsyncClient esAsyncClient;
+    private final Rest5Client restClient;
+    private final ElserInferenceService inferenceService;
+    private final SearchResultCache resultCache;
+    private final SearchCoalescer coalescer;
+    private final IndexGeneration indexGeneration;
+    private final SearchMetrics metrics;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final InferenceCircuitBreaker inferenceBreaker;
+    private final ProductChangeDetector changeDetector;
+    private final SuggestionService suggestions;
+    private final LongAdder degradedSearches = new LongAdder();
 
-    @Value("${elasticsearch.host:localhost}")
-    private String esHost;
+    @Value("${search.page.default-size:10}")
+    private int defaultPageSize;
 
-    @Value("${elasticsearch.port:9200}")
-    private int esPort;
+    @Value("${search.page.max-size:100}")
+    private int maxPageSize;
 
-    public ProductService(ElasticsearchClient esClient) {
+    @Value("${search.page.keep-alive:1m}")
+    private String pitKeepAlive;
+
+    @Value("${search.source.includes:id,name,category,price,image_url}")
+    private List<String> sourceIncludes;
+
+    @Value("${search.facets.category-size:20}")
+    private int facetCategorySize;
+
+    @Value("${search.facets.price-interval:50}")
+    private double facetPriceInterval;
+
+    @Value("${search.batch.max-queries:50}")
+    private int maxBatchQueries;
+
+    @Value("${search.explain.deadline-ms:2000}")
+    private long explainDeadlineMs;
+
+    @Value("${search.rrf.k:60}")
+    private int rrfK;
+
+    @Value("${search.rrf.window-size:50}")
+    private int rrfWindowSize;
+
+    @Value("${search.rrf.semantic-weight:1.0}")
+    private double rrfSemanticWeight;
+
+    @Value("${search.rrf.lexical-weight:1.0}")
+    private double rrfLexicalWeight;
+
+    @Value("${search.rrf.size:10}")
+    private int rrfSize;
+
+    @Value("${search.rrf.max-window-size:1000}")
+    private int maxRrfWindowSize;
+
+    public ProductService(ElasticsearchClient esClient, ElasticsearchAsyncClient esAsyncClient, Rest5Client restClient,
+                          ElserInferenceService inferenceService, SearchResultCache resultCache,
+                          SearchCoalescer coalescer, IndexGeneration indexGeneration, SearchMetrics metrics,
+                          AdaptiveConcurrencyLimiter limiter, InferenceCircuitBreaker inferenceBreaker,
+                          ProductChangeDetector changeDetector, SuggestionService suggestions) {
         this.esClient = esClient;
+        this.esAsyncClient = esAsyncClient;
+        this.restClient = restClient;
+        this.inferenceService = inferenceService;
+        this.resultCache = resultCache;
+        this.coalescer = coalescer;
+        this.indexGeneration = indexGeneration;
+        this.metrics = metrics;
+        this.limiter = limiter;
+        this.inferenceBreaker = inferenceBreaker;
+        this.changeDetector = changeDetector;
+        this.suggestions = suggestions;
     }
 
-    public void createIndexIfNotExists() throws IOException {
-        boolean exists = esClient.indices().exists(e -> e.index(INDEX_NAME)).value();
-        if (exists) {
-            log.info("Index '{}' already exists", INDEX_NAME);
-            return;
+    /**
+     * Writes a single product unless it is unchanged. A product whose description is unchanged
+     * gets a partial update so its embeddings are kept.
+     */
+    public void indexProduct(Product product) throws IOException {
+        ProductChangeDetector.Change change = changeDetector.classify(List.of(product)).get(0);
+        ProductDocument document = change.document();
+        switch (change.action()) {
+            case SKIP -> {
+                log.info("Product '{}' unchanged, skipped", product.name());
+                suggestions.recordProduct(product.name());
+                return;
+            }
+            case UPDATE -> {
+                try {
+                    UpdateResponse<ProductDocument> response = esClient.update(u -> u
+                                    .index(IndexManager.WRITE_ALIAS)
+                                    .id(document.id())
+                                    .doc(document.nonSemanticFields()),
+                            ProductDocument.class
+                    );
+                    log.info("Updated product '{}' without re-inference — result: {}", product.name(),
+                            response.result());
+                } catch (ElasticsearchException e) {
+                    if (e.status() != 404) {
+                        throw e;
+                    }
+                    // Deleted since it was classified, e.g. by another writer; write it in full
+                    changeDetector.forget(document.id());
+                    writeDocument(document);
+                }
+            }
+            default -> writeDocument(document);
         }
+        changeDetector.written(document);
+        suggestions.recordProduct(document.name());
+        indexGeneration.bump();
+    }
 
-        esClient.indices().create(c -> c
-                .index(INDEX_NAME)
-                .mappings(m -> m
-                        .properties("id", Property.of(p -> p.keyword(KeywordProperty.of(k -> k))))
-                        .properties("name", Property.of(p -> p.text(TextProperty.of(t -> t))))
-                        .properties("description", Property.of(p -> p.semanticText(
-                                SemanticTextProperty.of(st -> st)
-                        )))
-                        .properties("category", Property.of(p -> p.keyword(KeywordProperty.of(k -> k))))
-                        .properties("price", Property.of(p -> p.double_(DoubleNumberProperty.of(d -> d))))
-                        .properties("image_url", Property.of(p -> p.keyword(KeywordProperty.of(k -> k))))
-                )
+    private void writeDocument(ProductDocument document) throws IOException {
+        IndexResponse response = esClient.index(i -> i
+                .index(IndexManager.WRITE_ALIAS)
+                .id(document.id())
+                .document(document)
         );
-        log.info("Index '{}' created with semantic_text mapping", INDEX_NAME);
+        log.info("Indexed product '{}' — result: {}", document.name(), response.result());
     }
 
-    public void indexProduct(Product product) throws IOException {
-        IndexResponse response = esClient.index(i -> i
-                .index(INDEX_NAME)
-                .id(product.id())
-                .document(product)
+    public SearchPage semanticSearch(String query, SearchPageRequest page) throws IOException {
+        return search("semantic", query, semanticQuery(query), page);
+    }
+
+    public SearchPage hybridSearch(String query, SearchPageRequest page) throws IOException {
+        return search("hybrid", query, hybridQuery(query), page);
+    }
+
+    public SearchCacheStats cacheStats() {
+        return resultCache.stats();
+    }
+
+    public CoalescingStats coalescingStats() {
+        return coalescer.stats();
+    }
+
+    public ResilienceStats resilienceStats() {
+        return new ResilienceStats(
+                limiter.limit(),
+                limiter.inFlight(),
+                limiter.rejected(),
+                inferenceBreaker.state().name(),
+                degradedSearches.sum()
         );
-        log.info("Indexed product '{}' — result: {}", product.name(), response.result());
     }
 
-    public List<Product> semanticSearch(String query) throws IOException {
-        SearchResponse<Product> response = esClient.search(s -> s
-                        .index(INDEX_NAME)
-                        .query(q -> q
+    private SearchCacheKey cacheKey(String mode, String query, String params) {
+        return SearchCacheKey.of(mode, query, params, indexGeneration.current());
+    }
+
+    static Query semanticQuery(String query) {
+        return Query.of(q -> q
+                .semantic(sem -> sem
+                        .field("description")
+                        .query(query)
+                )
+        );
+    }
+
+    static Query hybridQuery(String query) {
+        return Query.of(q -> q
+                .bool(b -> b
+                        .should(sh -> sh
                                 .semantic(sem -> sem
                                         .field("description")
                                         .query(query)
                                 )
-                        ),
-                Product.class
+                        )
+                        .should(lexicalQuery(query))
+                )
         );
+    }
 
-        List<Product> results = new ArrayList<>();
-        for (Hit<Product> hit : response.hits().hits()) {
-            if (hit.source() != null) {
-                results.add(hit.source());
+    /**
+     * BM25 over the text fields. {@code description} is {@code semantic_text}, so it is left out to
+     * keep this query free of inference.
+     */
+    static Query lexicalQuery(String query) {
+        return Query.of(q -> q
+                .multiMatch(mm -> mm
+                        .query(query)
+                        .fields("name^2", "category")
+                )
+        );
+    }
+
+    /**
+     * First pages without a cursor go through the result cache and single-flight. Cursor pages are
+     * served from a point-in-time with {@code search_after} and are never cached; the PIT is closed
+     * once a page comes back short.
+     * <p>
+     * The inference circuit breaker is only consulted when a search actually goes to Elasticsearch,
+     * so cached pages keep being served while it is open and a cache hit never takes the half-open
+     * probe. While it is open, first pages are answered with lexical results flagged as degraded;
+     * cursor pages cannot switch scoring mid-way and are shed instead.
+     * <p>
+     * Filters are applied in {@code bool.filter} around whichever query runs, including the lexical
+     * fallback, so they do not affect scoring and are cached by Elasticsearch's query cache. Facets
+     * are aggregated in the same request on first pages only. There the filters move to
+     * {@code post_filter} and each facet is counted under the other facet's selection only, so
+     * choosing a category still shows the counts of the categories that could be added to it.
+     * <p>
+     * Queries whose first page has results are counted as typeahead suggestions.
+     */
+    private SearchPage search(String mode, String query, Query esQuery, SearchPageRequest page) throws IOException {
+        SearchFilters filters = page.filters();
+        boolean facets = page.facets() && page.cursor() == null;
+
+        int size = pageSize(page.size());
+        List<String> includes = page.fields() != null && !page.fields().isEmpty() ? page.fields() : sourceIncludes;
+
+        if (page.cursor() == null && !page.paginate()) {
+            String params = cacheParams(size, includes, page.filters()) + (facets ? ",facets" : "");
+            SearchCacheKey key = cacheKey(mode, query, params);
+            SearchPage result;
+            try {
+                result = resultCache.get(key, () -> {
+                    if (!inferenceBreaker.tryAcquire()) {
+                        throw InferenceUnavailable.INSTANCE;
+                    }
+                    return coalescer.execute(key,
+                            () -> executeSearch(mode, query, esQuery, filters, size, includes, facets, null));
+                });
+            } catch (InferenceUnavailable e) {
+                degradedSearches.increment();
+                Query lexical = lexicalQuery(query);
+                SearchCacheKey lexicalKey = cacheKey(LEXICAL_MODE, query, params);
+                result = resultCache.get(lexicalKey, () -> coalescer.execute(lexicalKey,
+                        () -> executeSearch(LEXICAL_MODE, query, lexical, filters, size, includes, facets, null)));
+            }
+            if (!result.products().isEmpty()) {
+                suggestions.recordQuery(query);
             }
+            return result;
         }
-        log.info("Semantic search for '{}' returned {} results", query, results.size());
-        return results;
+
+        // Decoded and opened first: a bad cursor or a failed PIT must not use up the half-open probe
+        SearchCursor cursor = page.cursor() != null
+                ? SearchCursor.decode(page.cursor())
+                : new SearchCursor(openPointInTime(), List.of());
+        if (!inferenceBreaker.tryAcquire()) {
+            if (page.cursor() == null) {
+                closePointInTime(cursor.pitId());
+            }
+            throw new SearchOverloadedException("Semantic search is temporarily unavailable",
+                    inferenceBreaker.retryAfterSeconds());
+        }
+        SearchPage result = executeSearch(mode, query, esQuery, filters, size, includes, facets, cursor);
+        if (page.cursor() == null && !result.products().isEmpty()) {
+            suggestions.recordQuery(query);
+        }
+        return result;
     }
 
-    public List<Product> hybridSearch(String query) throws IOException {
-        SearchResponse<Product> response = esClient.search(s -> s
-                        .index(INDEX_NAME)
-                        .query(q -> q
-                                .bool(b -> b
-                                        .should(sh -> sh
-                                                .semantic(sem -> sem
-                                                        .field("description")
-                                                        .query(query)
-                                                )
-                                        )
-                                        .should(sh -> sh
-                                                .multiMatch(mm -> mm
-                                                        .query(query)
-                                                        .fields("name^2", "category")
-                                                )
+    private SearchPage executeSearch(String mode, String query, Query esQuery, SearchFilters filters, int size,
+                                     List<String> includes, boolean facets, SearchCursor cursor) throws IOException {
+        boolean degraded = LEXICAL_MODE.equals(mode);
+        SearchRequest request = SearchRequest.of(s -> {
+            s.query(facets ? esQuery : filtered(esQuery, filters))
+                    .size(size)
+                    .source(src -> src.filter(f -> f.includes(includes)))
+                    .highlight(h -> h
+                            .fields("description", f -> f
+                                    .numberOfFragments(1)
+                            )
+                    );
+            if (facets) {
+                if (!filters.isEmpty()) {
+                    s.postFilter(allOf(filterClauses(filters)));
+                }
+                s.aggregations(CATEGORY_FACET, a -> a
+                                .filter(allOf(priceFilters(filters)))
+                                .aggregations(FACET_BUCKETS, b -> b
+                                        .terms(t -> t.field("category").size(facetCategorySize))))
+                        .aggregations(PRICE_FACET, a -> a
+                                .filter(allOf(categoryFilters(filters)))
+                                .aggregations(FACET_BUCKETS, b -> b
+                                        .histogram(h -> h.field("price").interval(facetPriceInterval)
+                                                .minDocCount(1))));
+            }
+            if (cursor != null) {
+                // With a PIT the index is implied and _shard_doc is added as the tiebreaker
+                s.pit(p -> p.id(cursor.pitId()).keepAlive(t -> t.time(pitKeepAlive)))
+                        .sort(so -> so.score(sc -> sc.order(SortOrder.Desc)));
+                if (!cursor.searchAfter().isEmpty()) {
+                    s.searchAfter(cursor.searchAfter());
+                }
+            }
+            return s;
+        });
+
+        long start = System.nanoTime();
+        Response raw;
+        try {
+            raw = limiter.execute(() -> send(request, cursor == null));
+        } catch (IOException | RuntimeException e) {
+            if (!degraded) {
+                inferenceBreaker.onError(e);
+            }
+            throw e;
+        }
+        long roundTripNanos = System.nanoTime() - start;
+        if (!degraded) {
+            inferenceBreaker.onSuccess(roundTripNanos);
+        }
+
+        long decodingStart = System.nanoTime();
+        SearchResponse<Product> response = decode(raw);
+        metrics.recordSearch(mode, response.took(), roundTripNanos, System.nanoTime() - decodingStart);
+
+        long mappingStart = System.nanoTime();
+        List<Hit<Product>> hits = response.hits().hits();
+        List<Product> results = toProducts(hits);
+        Facets pageFacets = facets ? toFacets(response.aggregations()) : null;
+        metrics.recordPhase(mode, "mapping", System.nanoTime() - mappingStart);
+        metrics.recordResults(mode, results.size());
+
+        String nextCursor = null;
+        if (cursor != null) {
+            String pitId = response.pitId() != null ? response.pitId() : cursor.pitId();
+            if (hits.size() == size) {
+                nextCursor = new SearchCursor(pitId, hits.get(hits.size() - 1).sort()).encode();
+            } else {
+                closePointInTime(pitId);
+            }
+        }
+
+        if (metrics.sampleLog()) {
+            log.info("search mode={} results={} took_ms={} client_ms={} query=\"{}\"", mode, results.size(),
+                    response.took(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), query);
+        }
+        return new SearchPage(results, total(response.hits(), results.size()), nextCursor, degraded, pageFacets);
+    }
+
+    /**
+     * Sends a search over the low-level client, which returns once the response body has been
+     * received. The typed client decodes inside the call, so network time and decoding could not be
+     * told apart; decoding is left to {@link #decode} and timed on its own.
+     */
+    private Response send(SearchRequest request, boolean onIndex) throws IOException {
+        Request lowLevel = new Request("POST", onIndex ? "/" + INDEX_NAME + "/_search" : "/_search");
+        // Aggregations are decoded by their type prefix, which the typed client also asks for
+        lowLevel.addParameter("typed_keys", "true");
+        lowLevel.setJsonEntity(JsonpUtils.toJsonString(request, esClient._jsonpMapper()));
+        return restClient.performRequest(lowLevel);
+    }
+
+    private SearchResponse<Product> decode(Response response) throws IOException {
+        JsonpMapper mapper = esClient._jsonpMapper();
+        try (InputStream in = response.getEntity().getContent();
+             JsonParser parser = mapper.jsonProvider().createParser(in)) {
+            return SEARCH_RESPONSE.deserialize(parser, mapper);
+        }
+    }
+
+    /**
+     * Runs every query of the batch in one {@code _msearch}. Queries already in the result cache
+     * are answered from it and left out of the request; per-query failures are reported in place.
+     * While the inference circuit breaker is open, the queries that have to be sent run lexically
+     * and are flagged as degraded.
+     */
+    public BatchSearchResponse batchSearch(BatchSearchRequest request) throws IOException {
+        List<BatchSearchRequest.Query> queries = request.queries() != null ? request.queries() : List.of();
+        if (queries.size() > maxBatchQueries) {
+            throw new IllegalArgumentException("Batch of " + queries.size() + " queries exceeds the limit of "
+                    + maxBatchQueries);
+        }
+
+        BatchSearchResponse.Item[] items = new BatchSearchResponse.Item[queries.size()];
+        List<PendingQuery> pending = new ArrayList<>();
+
+        for (int i = 0; i < queries.size(); i++) {
+            BatchSearchRequest.Query query = queries.get(i);
+            if (query.q() == null || query.q().isBlank()) {
+                items[i] = new BatchSearchResponse.Item(query.q(), List.of(), 0, false, "Missing query text");
+                continue;
+            }
+            String mode = query.mode() != null ? query.mode() : "semantic";
+            if (!mode.equals("semantic") && !mode.equals("hybrid")) {
+                items[i] = new BatchSearchResponse.Item(query.q(), List.of(), 0, false,
+                        "Unknown mode '" + mode + "'");
+                continue;
+            }
+            if (query.size() != null && query.size() < 1) {
+                items[i] = new BatchSearchResponse.Item(query.q(), List.of(), 0, false, "size must be at least 1");
+                continue;
+            }
+            int size = pageSize(query.size());
+            SearchFilters filters = query.filters() != null ? query.filters() : SearchFilters.NONE;
+            String params = cacheParams(size, sourceIncludes, filters);
+
+            SearchCacheKey key = cacheKey(mode, query.q(), params);
+            SearchPage cached = resultCache.getIfPresent(key);
+            if (cached != null) {
+                items[i] = batchItem(query.q(), cached);
+                continue;
+            }
+            Query esQuery = mode.equals("hybrid") ? hybridQuery(query.q()) : semanticQuery(query.q());
+            pending.add(new PendingQuery(i, query.q(), params, size, filtered(esQuery, filters), filters, key));
+        }
+
+        // One _msearch is one inference-backed call, so the breaker is consulted once per batch
+        boolean degraded = !pending.isEmpty() && !inferenceBreaker.tryAcquire();
+        if (degraded) {
+            degradedSearches.increment();
+            List<PendingQuery> lexical = new ArrayList<>();
+            for (PendingQuery query : pending) {
+                SearchCacheKey key = cacheKey(LEXICAL_MODE, query.q(), query.params());
+                SearchPage cached = resultCache.getIfPresent(key);
+                if (cached != null) {
+                    items[query.index()] = batchItem(query.q(), cached);
+                } else {
+                    lexical.add(new PendingQuery(query.index(), query.q(), query.params(), query.size(),
+                            filtered(lexicalQuery(query.q()), query.filters()), query.filters(), key));
+                }
+            }
+            pending = lexical;
+        }
+
+        if (!pending.isEmpty()) {
+            List<RequestItem> searches = new ArrayList<>();
+            for (PendingQuery query : pending) {
+                searches.add(RequestItem.of(r -> r
+                        .header(h -> h)
+                        .body(b -> b
+                                .query(query.esQuery())
+                                .size(query.size())
+                                .source(src -> src.filter(f -> f.includes(sourceIncludes)))
+                                .highlight(h -> h
+                                        .fields("description", f -> f
+                                                .numberOfFragments(1)
                                         )
                                 )
-                        ),
-                Product.class
-        );
+                        )
+                ));
+            }
 
-        List<Product> results = new ArrayList<>();
-        for (Hit<Product> hit : response.hits().hits()) {
-            if (hit.source() != null) {
-                results.add(hit.source());
+            long start = System.nanoTime();
+            MsearchResponse<Product> response;
+            try {
+                response = limiter.execute(() -> esClient.msearch(m -> m
+                                .index(INDEX_NAME)
+                                .searches(searches),
+                        Product.class
+                ));
+            } catch (IOException | RuntimeException e) {
+                if (!degraded) {
+                    inferenceBreaker.onError(e);
+                }
+                throw e;
+            }
+            metrics.recordSearch("batch", response.took(), System.nanoTime() - start);
+
+            boolean overloaded = false;
+            for (int j = 0; j < pending.size(); j++) {
+                PendingQuery query = pending.get(j);
+                MultiSearchResponseItem<Product> item = response.responses().get(j);
+                if (item.isFailure()) {
+                    int status = item.failure().status();
+                    overloaded |= status == 429 || status >= 500;
+                    items[query.index()] = new BatchSearchResponse.Item(query.q(), List.of(), 0, degraded,
+                            item.failure().error().reason());
+                } else {
+                    List<Product> products = toProducts(item.result().hits().hits());
+                    SearchPage page = new SearchPage(products, total(item.result().hits(), products.size()), null,
+                            degraded, null);
+                    resultCache.put(query.key(), page);
+                    items[query.index()] = batchItem(query.q(), page);
+                }
+            }
+            if (!degraded) {
+                if (overloaded) {
+                    inferenceBreaker.onFailure();
+                } else {
+                    inferenceBreaker.onSuccess(System.nanoTime() - start);
+                }
             }
         }
-        log.info("Hybrid search for '{}' returned {} results", query, results.size());
-        return results;
+
+        for (BatchSearchResponse.Item item : items) {
+            if (item.error() == null) {
+                metrics.recordResults("batch", item.products().size());
+            }
+        }
+        if (metrics.sampleLog()) {
+            log.info("search mode=batch queries={} sent={} degraded={}", queries.size(), pending.size(), degraded);
+        }
+        return new BatchSearchResponse(List.of(items));
     }
 
-    public SearchExplanation explainSearch(String query) throws IOException {
-        // 1. Get ELSER tokens via the _inference API
-        Map<String, Double> queryTokens = fetchElserTokens(query);
+    /**
+     * The requested page size capped at {@code search.page.max-size}. Sizes below one are rejected
+     * here; Elasticsearch would answer them with a 400 and a cursor page of size zero would leave
+     * its point-in-time open.
+     */
+    private int pageSize(Integer requested) {
+        int size = requested != null ? requested : defaultPageSize;
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be at least 1");
+        }
+        return Math.min(size, maxPageSize);
+    }
 
-        // 2. Run semantic search with scores
-        SearchResponse<Product> response = esClient.search(s -> s
-                        .index(INDEX_NAME)
-                        .query(q -> q
-                                .semantic(sem -> sem
-                                        .field("description")
-                                        .query(query)
-                                )
-                        ),
-                Product.class
+    private static BatchSearchResponse.Item batchItem(String query, SearchPage page) {
+        return new BatchSearchResponse.Item(query, page.products(), page.total(), page.degraded(), null);
+    }
+
+    static Query filtered(Query query, SearchFilters filters) {
+        if (filters.isEmpty()) {
+            return query;
+        }
+        return Query.of(q -> q
+                .bool(b -> b
+                        .must(query)
+                        .filter(filterClauses(filters))
+                )
         );
+    }
 
-        double maxScore = response.hits().maxScore() != null ? response.hits().maxScore() : 0.0;
+    private static List<Query> filterClauses(SearchFilters filters) {
+        List<Query> clauses = new ArrayList<>(categoryFilters(filters));
+        clauses.addAll(priceFilters(filters));
+        return clauses;
+    }
 
-        List<SearchExplanation.ScoredResult> scoredResults = new ArrayList<>();
-        for (Hit<Product> hit : response.hits().hits()) {
+    private static List<Query> categoryFilters(SearchFilters filters) {
+        if (filters.categories() == null || filters.categories().isEmpty()) {
+            return List.of();
+        }
+        return List.of(Query.of(f -> f
+                .terms(t -> t
+                        .field("category")
+                        .terms(tv -> tv.value(filters.categories().stream().map(FieldValue::of).toList()))
+                )
+        ));
+    }
+
+    /**
+     * {@code [minPrice, maxPrice)}: the upper bound is exclusive like the price facet's buckets,
+     * whose {@code to} the UI sends as {@code maxPrice}; see {@link SearchFilters}.
+     */
+    private static List<Query> priceFilters(SearchFilters filters) {
+        if (filters.minPrice() == null && filters.maxPrice() == null) {
+            return List.of();
+        }
+        return List.of(Query.of(f -> f
+                .range(r -> r
+                        .number(n -> n
+                                .field("price")
+                                .gte(filters.minPrice())
+                                .lt(filters.maxPrice())
+                        )
+                )
+        ));
+    }
+
+    /**
+     * Conjunction of filter clauses; without clauses it matches every document.
+     */
+    private static Query allOf(List<Query> clauses) {
+        return Query.of(q -> q.bool(b -> b.filter(clauses)));
+    }
+
+    private static String cacheParams(int size, List<String> includes, SearchFilters filters) {
+        return "size=" + size + ",fields=" + String.join(",", includes)
+                + (filters.isEmpty() ? "" : ",filters=" + filters);
+    }
+
+    static List<Product> toProducts(List<Hit<Product>> hits) {
+        List<Product> results = new ArrayList<>(hits.size());
+        for (Hit<Product> hit : hits) {
             if (hit.source() != null) {
-                scoredResults.add(new SearchExplanation.ScoredResult(
-                        hit.source(),
-                        hit.score() != null ? hit.score() : 0.0,
-                        maxScore
-                ));
+                results.add(withSnippet(hit));
             }
         }
+        return results;
+    }
 
-        log.info("Explain search for '{}': {} tokens, {} results", query, queryTokens.size(), scoredResults.size());
-        return new SearchExplanation(query, queryTokens, scoredResults);
+    private Facets toFacets(Map<String, Aggregate> aggregations) {
+        List<Facets.CategoryCount> categories = new ArrayList<>();
+        Aggregate categoryAgg = facetBuckets(aggregations.get(CATEGORY_FACET));
+        if (categoryAgg != null && categoryAgg.isSterms()) {
+            for (StringTermsBucket bucket : categoryAgg.sterms().buckets().array()) {
+                categories.add(new Facets.CategoryCount(bucket.key().stringValue(), bucket.docCount()));
+            }
+        }
+        List<Facets.PriceRange> prices = new ArrayList<>();
+        Aggregate priceAgg = facetBuckets(aggregations.get(PRICE_FACET));
+        if (priceAgg != null && priceAgg.isHistogram()) {
+            for (HistogramBucket bucket : priceAgg.histogram().buckets().array()) {
+                prices.add(new Facets.PriceRange(bucket.key(), bucket.key() + facetPriceInterval, bucket.docCount()));
+            }
+        }
+        return new Facets(categories, prices);
     }
 
-    private Map<String, Double> fetchElserTokens(String query) throws IOException {
-        String esUrl = "http://" + esHost + ":" + esPort;
-        // Try the default ELSER inference endpoint that semantic_text uses
-        String[] endpoints = {
-                esUrl + "/_inference/sparse_embedding/.elser-2-elasticsearch",
-                esUrl + "/_inference/sparse_embedding/.elser_model_2_linux-x86_64"
-        };
+    private static Aggregate facetBuckets(Aggregate facet) {
+        return facet != null && facet.isFilter() ? facet.filter().aggregations().get(FACET_BUCKETS) : null;
+    }
 
-        String requestBody = objectMapper.writeValueAsString(Map.of("input", List.of(query)));
+    private static long total(HitsMetadata<Product> hits, int fallback) {
+        return hits.total() != null ? hits.total().value() : fallback;
+    }
 
-        for (String endpoint : endpoints) {
-            try {
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(endpoint))
-                        .header("Content-Type", "application/json")
-                        .POST(HttpRequest.BodyPublishers.ofString(requestBody))
-                        .build();
+    /**
+     * Substitutes the highlighted passage for the description when the full description was not
+     * requested in {@code _source}.
+     */
+    private static Product withSnippet(Hit<Product> hit) {
+        Product product = hit.source();
+        List<String> snippets = hit.highlight().get("description");
+        if (product.description() != null || snippets == null || snippets.isEmpty()) {
+            return product;
+        }
+        return new Product(product.id(), product.name(), snippets.get(0), product.category(),
+                product.price(), product.imageUrl());
+    }
+
+    private String openPointInTime() throws IOException {
+        return esClient.openPointInTime(p -> p
+                .index(INDEX_NAME)
+                .keepAlive(t -> t.time(pitKeepAlive))
+        ).id();
+    }
+
+    private void closePointInTime(String pitId) {
+        try {
+            esClient.closePointInTime(c -> c.id(pitId));
+        } catch (IOException | RuntimeException e) {
+            // The PIT expires on its own after the keep-alive
+            log.debug("Could not close point-in-time: {}", e.getMessage());
+        }
+    }
 
-                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    /**
+     * Hybrid search with reciprocal rank fusion. Both legs go out in one {@code _msearch}
+     * round-trip and are fused here, so neither leg's score scale leaks into the other. If one leg
+     * fails the other is still returned. The semantic leg needs inference: it reports to the
+     * circuit breaker, and while the breaker is open only the lexical leg runs. Results without
+     * the semantic leg are flagged as degraded.
+     * <p>
+     * {@code k}, {@code windowSize} and {@code size} below one and negative or non-finite weights
+     * are rejected. The window is capped at {@code search.rrf.max-window-size} and the number of
+     * fused results at the window.
+     */
+    public RrfSearchResponse rrfSearch(String query, RrfOptions options) throws IOException {
+        int k = options.k() != null ? options.k() : rrfK;
+        int requestedWindowSize = options.windowSize() != null ? options.windowSize() : rrfWindowSize;
+        double semanticWeight = options.semanticWeight() != null ? options.semanticWeight() : rrfSemanticWeight;
+        double lexicalWeight = options.lexicalWeight() != null ? options.lexicalWeight() : rrfLexicalWeight;
+        int requestedSize = options.size() != null ? options.size() : rrfSize;
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+        if (requestedWindowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be at least 1");
+        }
+        if (requestedSize < 1) {
+            throw new IllegalArgumentException("size must be at least 1");
+        }
+        requireWeight("semanticWeight", semanticWeight);
+        requireWeight("lexicalWeight", lexicalWeight);
+        // Both legs would fail once the window passes the index's max_result_window
+        int windowSize = Math.min(requestedWindowSize, maxRrfWindowSize);
+        int size = Math.min(requestedSize, windowSize);
+
+        SearchCacheKey key = cacheKey("rrf", query,
+                "k=" + k + ",window=" + windowSize + ",ws=" + semanticWeight + ",wl=" + lexicalWeight + ",size=" + size);
+        return coalescer.execute(key, () -> executeRrfSearch(query, k, windowSize, semanticWeight, lexicalWeight, size));
+    }
+
+    private static void requireWeight(String name, double weight) {
+        if (!Double.isFinite(weight) || weight < 0) {
+            throw new IllegalArgumentException(name + " must be a finite number of at least 0");
+        }
+    }
 
-                if (response.statusCode() == 200) {
-                    return parseElserTokens(response.body());
+    private RrfSearchResponse executeRrfSearch(String query, int k, int windowSize, double semanticWeight,
+                                               double lexicalWeight, int size) throws IOException {
+        // Each leg is cached on its own; only the legs that miss are sent in the _msearch
+        SearchCacheKey semanticKey = cacheKey("rrf-semantic", query, "window=" + windowSize);
+        SearchCacheKey lexicalKey = cacheKey("rrf-lexical", query, "window=" + windowSize);
+        List<Hit<Product>> semanticHits = resultCache.getIfPresent(semanticKey);
+        List<Hit<Product>> lexicalHits = resultCache.getIfPresent(lexicalKey);
+
+        boolean fetchSemantic = semanticHits == null && inferenceBreaker.tryAcquire();
+        boolean fetchLexical = lexicalHits == null;
+        if (fetchSemantic || fetchLexical) {
+            long start = System.nanoTime();
+            MsearchResponse<Product> response;
+            try {
+                response = limiter.execute(() -> esClient.msearch(m -> {
+                            m.index(INDEX_NAME);
+                            if (fetchSemantic) {
+                                m.searches(sr -> sr
+                                        .header(h -> h)
+                                        .body(b -> b
+                                                .size(windowSize)
+                                                .query(q -> q
+                                                        .semantic(sem -> sem
+                                                                .field("description")
+                                                                .query(query)
+                                                        )
+                                                )
+                                        )
+                                );
+                            }
+                            if (fetchLexical) {
+                                m.searches(sr -> sr
+                                        .header(h -> h)
+                                        .body(b -> b
+                                                .size(windowSize)
+                                                .query(lexicalQuery(query))
+                                        )
+                                );
+                            }
+                            return m;
+                        },
+                        Product.class
+                ));
+            } catch (IOException | RuntimeException e) {
+                if (fetchSemantic) {
+                    inferenceBreaker.onError(e);
                 }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new IOException("Interrupted while fetching ELSER tokens", e);
-            } catch (Exception e) {
-                log.debug("Inference endpoint {} not available: {}", endpoint, e.getMessage());
+                throw e;
             }
+            long roundTripNanos = System.nanoTime() - start;
+            metrics.recordSearch("rrf", response.took(), roundTripNanos);
+
+            int next = 0;
+            if (fetchSemantic) {
+                MultiSearchResponseItem<Product> item = response.responses().get(next++);
+                if (item.isFailure()) {
+                    inferenceBreaker.onError(new ElasticsearchException("msearch", item.failure()));
+                } else {
+                    inferenceBreaker.onSuccess(roundTripNanos);
+                }
+                semanticHits = legHits(item, "semantic", query);
+                if (semanticHits != null) {
+                    resultCache.put(semanticKey, semanticHits);
+                }
+            }
+            if (fetchLexical) {
+                lexicalHits = legHits(response.responses().get(next), "lexical", query);
+                if (lexicalHits != null) {
+                    resultCache.put(lexicalKey, lexicalHits);
+                }
+            }
+        }
+        if (semanticHits == null && lexicalHits == null) {
+            throw new IOException("Both RRF legs failed for query '" + query + "'");
+        }
+        boolean degraded = semanticHits == null;
+        if (degraded) {
+            degradedSearches.increment();
         }
 
-        // Fallback: try to discover the inference endpoint
+        long fusionStart = System.nanoTime();
+        List<FusedResult> results = ReciprocalRankFusion.fuse(
+                semanticHits != null ? semanticHits : List.of(),
+                lexicalHits != null ? lexicalHits : List.of(),
+                k, semanticWeight, lexicalWeight, size
+        );
+        metrics.recordPhase("rrf", "mapping", System.nanoTime() - fusionStart);
+        metrics.recordResults("rrf", results.size());
+        if (metrics.sampleLog()) {
+            log.info("search mode=rrf results={} degraded={} query=\"{}\"", results.size(), degraded, query);
+        }
+        return new RrfSearchResponse(results, degraded);
+    }
+
+    private List<Hit<Product>> legHits(MultiSearchResponseItem<Product> item, String leg, String query) {
+        if (item.isFailure()) {
+            log.warn("RRF {} leg failed for '{}': {}", leg, query, item.failure().error().reason());
+            return null;
+        }
+        return item.result().hits().hits();
+    }
+
+    /**
+     * Fires ELSER inference and the semantic search concurrently and joins them under one deadline.
+     * The search result is required; if the tokens are not back in time the hits are returned
+     * without them and the explanation is flagged as partial. The inference request is left running
+     * so that its result still lands in the token cache.
+     * <p>
+     * The semantic search reports to the inference circuit breaker. While the breaker is open
+     * neither inference nor the semantic search is sent; the hits come from the lexical query and
+     * the explanation is flagged as degraded.
+     */
+    public SearchExplanation explainSearch(String query) throws IOException {
+        if (!inferenceBreaker.tryAcquire()) {
+            return degradedExplanation(query);
+        }
+        long start = System.nanoTime();
+        long deadlineNanos = start + TimeUnit.MILLISECONDS.toNanos(explainDeadlineMs);
+
+        // 1. Get ELSER tokens via the _inference API (cached per normalized query)
+        CompletableFuture<Map<String, Double>> tokensFuture = inferenceService.fetchTokensAsync(query);
+        tokensFuture.whenComplete((tokens, failure) ->
+                metrics.recordPhase("explain", "inference", System.nanoTime() - start));
+
+        // 2. Run semantic search with scores
+        long searchStart = System.nanoTime();
+        SearchResponse<Product> response;
         try {
-            HttpRequest listRequest = HttpRequest.newBuilder()
-                    .uri(URI.create(esUrl + "/_inference/sparse_embedding"))
-                    .GET()
-                    .build();
-
-            HttpResponse<String> listResponse = httpClient.send(listRequest, HttpResponse.BodyHandlers.ofString());
-            if (listResponse.statusCode() == 200) {
-                JsonNode root = objectMapper.readTree(listResponse.body());
-                JsonNode endpoints2 = root.get("endpoints");
-                if (endpoints2 != null && endpoints2.isArray() && !endpoints2.isEmpty()) {
-                    String inferenceId = endpoints2.get(0).get("inference_id").asText();
-                    String endpoint = esUrl + "/_inference/sparse_embedding/" + inferenceId;
-
-                    HttpRequest request = HttpRequest.newBuilder()
-                            .uri(URI.create(endpoint))
-                            .header("Content-Type", "application/json")
-                            .POST(HttpRequest.BodyPublishers.ofString(requestBody))
-                            .build();
-
-                    HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-                    if (response.statusCode() == 200) {
-                        return parseElserTokens(response.body());
-                    }
+            response = limiter.execute(() -> {
+                CompletableFuture<SearchResponse<Product>> searchFuture = esAsyncClient.search(s -> s
+                                .index(INDEX_NAME)
+                                .query(q -> q
+                                        .semantic(sem -> sem
+                                                .field("description")
+                                                .query(query)
+                                        )
+                                ),
+                        Product.class
+                );
+                try {
+                    return searchFuture.get(remainingNanos(deadlineNanos), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    searchFuture.cancel(true);
+                    throw new IOException("Explain search for '" + query + "' exceeded " + explainDeadlineMs + " ms", e);
+                } catch (ExecutionException e) {
+                    throw new IOException("Explain search for '" + query + "' failed", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted during explain search", e);
                 }
-            }
+            });
+        } catch (IOException | RuntimeException e) {
+            inferenceBreaker.onError(e);
+            throw e;
+        }
+        inferenceBreaker.onSuccess(System.nanoTime() - searchStart);
+        metrics.recordSearch("explain", response.took(), System.nanoTime() - start);
+
+        Map<String, Double> queryTokens = Map.of();
+        boolean partial = false;
+        try {
+            queryTokens = tokensFuture.get(remainingNanos(deadlineNanos), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            partial = true;
+        } catch (ExecutionException e) {
+            log.warn("ELSER inference for '{}' failed: {}", query, e.getCause().getMessage());
+            partial = true;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            throw new IOException("Interrupted while discovering inference endpoints", e);
-        } catch (Exception e) {
-            log.warn("Could not discover inference endpoints: {}", e.getMessage());
+            throw new IOException("Interrupted while waiting for ELSER tokens", e);
         }
 
-        log.warn("No ELSER inference endpoint found, returning empty tokens");
-        return Map.of();
+        List<SearchExplanation.ScoredResult> scoredResults = scoredResults(response);
+        metrics.recordResults("explain", scoredResults.size());
+        if (metrics.sampleLog()) {
+            log.info("search mode=explain tokens={} results={} partial={} query=\"{}\"", queryTokens.size(),
+                    scoredResults.size(), partial, query);
+        }
+        return new SearchExplanation(query, queryTokens, scoredResults, partial, false);
     }
 
-    private Map<String, Double> parseElserTokens(String responseBody) throws IOException {
-        JsonNode root = objectMapper.readTree(responseBody);
-        // Response format: { "sparse_embedding": [ { "is_truncated": false, "embedding": { token: weight, ... } } ] }
-        JsonNode sparseEmbedding = root.at("/sparse_embedding/0/embedding");
-        if (sparseEmbedding.isMissingNode()) {
-            // Try alternate response formats
-            sparseEmbedding = root.at("/sparse_embedding/0");
-        }
-        if (sparseEmbedding.isMissingNode()) {
-            sparseEmbedding = root.at("/results/0/sparse_embedding");
+    private SearchExplanation degradedExplanation(String query) throws IOException {
+        degradedSearches.increment();
+        long start = System.nanoTime();
+        SearchResponse<Product> response = limiter.execute(() -> esClient.search(s -> s
+                        .index(INDEX_NAME)
+                        .query(lexicalQuery(query)),
+                Product.class
+        ));
+        metrics.recordSearch("explain", response.took(), System.nanoTime() - start);
+
+        List<SearchExplanation.ScoredResult> scoredResults = scoredResults(response);
+        metrics.recordResults("explain", scoredResults.size());
+        if (metrics.sampleLog()) {
+            log.info("search mode=explain results={} degraded=true query=\"{}\"", scoredResults.size(), query);
         }
-        if (sparseEmbedding.isMissingNode()) {
-            log.warn("Could not parse ELSER tokens from response");
-            return Map.of();
+        return new SearchExplanation(query, Map.of(), scoredResults, true, true);
+    }
+
+    private static List<SearchExplanation.ScoredResult> scoredResults(SearchResponse<Product> response) {
+        double maxScore = response.hits().maxScore() != null ? response.hits().maxScore() : 0.0;
+        List<SearchExplanation.ScoredResult> scoredResults = new ArrayList<>();
+        for (Hit<Product> hit : response.hits().hits()) {
+            if (hit.source() != null) {
+                scoredResults.add(new SearchExplanation.ScoredResult(
+                        hit.source(),
+                        hit.score() != null ? hit.score() : 0.0,
+                        maxScore
+                ));
+            }
         }
+        return scoredResults;
+    }
 
-        Map<String, Double> tokens = new LinkedHashMap<>();
-        sparseEmbedding.fields().forEachRemaining(entry ->
-                tokens.put(entry.getKey(), entry.getValue().asDouble())
-        );
+    private static long remainingNanos(long deadlineNanos) {
+        return Math.max(0, deadlineNanos - System.nanoTime());
+    }
 
-        // Sort by weight descending and take top 20
-        return tokens.entrySet().stream()
-                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
-                .limit(20)
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (a, b) -> a,
-                        LinkedHashMap::new
-                ));
+    private record PendingQuery(int index, String q, String params, int size, Query esQuery, SearchFilters filters,
+                                SearchCacheKey key) {
+    }
+
+    /**
+     * Raised from a cache loader when the inference circuit breaker refuses the call, so the
+     * caller can fall back to lexical search without caching anything under the semantic key.
+     */
+    private static final class InferenceUnavailable extends RuntimeException {
+
+        static final InferenceUnavailable INSTANCE = new InferenceUnavailable();
+
+        private InferenceUnavailable() {
+            super("Inference circuit breaker is open", null, false, false);
+        }
     }
 }
@@ -0,0 +1,72 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.example.productsearch.model.FusedResult;
+import com.example.productsearch.model.Product;
+
+import java.util.*;
+
+/**
+ * Client-side reciprocal rank fusion: each document scores {@code sum(weight / (k + rank))} over
+ * the legs it appears in, with 1-based ranks. Raw leg scores are carried through for display only,
+ * since BM25 and ELSER scores are not on comparable scales.
+ */
+final class ReciprocalRankFusion {
+
+    private ReciprocalRankFusion() {
+    }
+
+    static List<FusedResult> fuse(List<Hit<Product>> semanticHits, List<Hit<Product>> lexicalHits,
+                                  int k, double semanticWeight, double lexicalWeight, int size) {
+        Map<String, Accumulator> byId = new LinkedHashMap<>();
+        accumulate(byId, semanticHits, k, semanticWeight, true);
+        accumulate(byId, lexicalHits, k, lexicalWeight, false);
+
+        return byId.values().stream()
+                .sorted(Comparator.comparingDouble(Accumulator::score).reversed())
+                .limit(size)
+                .map(Accumulator::toResult)
+                .toList();
+    }
+
+    private static void accumulate(Map<String, Accumulator> byId, List<Hit<Product>> hits,
+                                   int k, double weight, boolean semantic) {
+        int rank = 0;
+        for (Hit<Product> hit : hits) {
+            if (hit.source() == null) {
+                continue;
+            }
+            rank++;
+            Accumulator acc = byId.computeIfAbsent(hit.id(), id -> new Accumulator(hit.source()));
+            acc.score += weight / (k + rank);
+            if (semantic) {
+                acc.semanticRank = rank;
+                acc.semanticScore = hit.score();
+            } else {
+                acc.lexicalRank = rank;
+                acc.lexicalScore = hit.score();
+            }
+        }
+    }
+
+    private static final class Accumulator {
+        private final Product product;
+        private double score;
+        private Integer semanticRank;
+        private Double semanticScore;
+        private Integer lexicalRank;
+        private Double lexicalScore;
+
+        Accumulator(Product product) {
+            this.product = product;
+        }
+
+        double score() {
+            return score;
+        }
+
+        FusedResult toResult() {
+            return new FusedResult(product, score, semanticRank, semanticScore, lexicalRank, lexicalScore);
+        }
+    }
+}
@@ -0,0 +1,616 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkIngester;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkListener;
+import co.elastic.clients.elasticsearch._types.Time;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.MgetResponse;
+import co.elastic.clients.elasticsearch.core.ScrollResponse;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.get.GetResult;
+import co.elastic.clients.elasticsearch.core.mget.MultiGetResponseItem;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.indices.ForcemergeResponse;
+import co.elastic.clients.elasticsearch.indices.IndexSettings;
+import co.elastic.clients.elasticsearch.indices.IndexState;
+import co.elastic.clients.json.JsonData;
+import com.example.productsearch.model.ProductDocument;
+import com.example.productsearch.model.ReindexStatus;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rebuilds the product index into a new version without taking search down:
+ * <ol>
+ *   <li>create the next {@code products-vN} with refreshes disabled and no replicas</li>
+ *   <li>copy the current read index with a sliced scroll, one thread per slice, into a
+ *       {@link BulkIngester} using {@code create} operations. Writes keep going to the source
+ *       meanwhile, so they stay searchable and change detection keeps seeing every document</li>
+ *   <li>give it the source's refresh interval and replica count, refresh and force-merge</li>
+ *   <li>point the write alias at the target and replay the documents whose {@code indexed_at} is
+ *       after the job started, unless the target already holds a newer write</li>
+ *   <li>swap the read alias in one atomic alias update</li>
+ * </ol>
+ * Only writes made during the last two steps are briefly unsearchable. If a job fails the read
+ * alias is left untouched. Once the write alias has moved, writes made since only exist in the
+ * target, so the job rolls back: the target gets its refreshes back, the write alias returns to
+ * the source and documents written to the target later than their source copy are copied back.
+ * Should the rollback itself fail, the write alias stays on the target, which the status reports;
+ * starting the job again then resumes into that index, since the copy and the replay never
+ * overwrite a newer document.
+ */
+@Service
+public class ReindexService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReindexService.class);
+    private static final int MAX_LOGGED_FAILURES = 20;
+
+    private final ElasticsearchClient esClient;
+    private final IndexManager indexManager;
+    private final IndexGeneration indexGeneration;
+    private final AtomicReference<Job> current = new AtomicReference<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "reindex");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "reindex-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${reindex.slices:4}")
+    private int slices;
+
+    @Value("${reindex.batch-size:500}")
+    private int batchSize;
+
+    @Value("${reindex.scroll-keep-alive:5m}")
+    private String scrollKeepAlive;
+
+    @Value("${reindex.max-concurrent-requests:4}")
+    private int maxConcurrentRequests;
+
+    @Value("${reindex.max-segments:1}")
+    private long maxSegments;
+
+    @Value("${reindex.max-retries:5}")
+    private int maxRetries;
+
+    @Value("${reindex.retry-backoff-ms:200}")
+    private long retryBackoffMs;
+
+    @Value("${reindex.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    @Value("${reindex.catch-up-margin-ms:300000}")
+    private long catchUpMarginMs;
+
+    public ReindexService(ElasticsearchClient esClient, IndexManager indexManager, IndexGeneration indexGeneration) {
+        this.esClient = esClient;
+        this.indexManager = indexManager;
+        this.indexGeneration = indexGeneration;
+    }
+
+    /**
+     * Starts a reindex in the background and returns its initial status.
+     *
+     * @throws IllegalStateException if a reindex is already running
+     */
+    public ReindexStatus start() {
+        Job previous = current.get();
+        if (previous != null && previous.running()) {
+            throw new IllegalStateException("A reindex is already running");
+        }
+        Job job = new Job();
+        if (!current.compareAndSet(previous, job)) {
+            throw new IllegalStateException("A reindex is already running");
+        }
+        executor.execute(job::run);
+        return job.status();
+    }
+
+    public ReindexStatus status() {
+        Job job = current.get();
+        return job != null
+                ? job.status()
+                : new ReindexStatus("IDLE", null, null, null, 0, 0, 0, 0, 0, 0, 0, 0, 0.0, null);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+        retryScheduler.shutdownNow();
+    }
+
+    private record CopyItem(String id, JsonData source, int attempt) {
+    }
+
+    @FunctionalInterface
+    private interface PageHandler<T> {
+        void accept(List<Hit<T>> hits) throws IOException;
+    }
+
+    /**
+     * The settings that are relaxed while the target is loaded and given back afterwards.
+     */
+    private record IndexTuning(String refreshInterval, String replicas) {
+        static final IndexTuning BULK_LOAD = new IndexTuning("-1", "0");
+    }
+
+    /**
+     * Reads the refresh interval and replica count of {@code index}, falling back to the cluster
+     * defaults where the index does not set them.
+     */
+    private IndexTuning tuning(String index) throws IOException {
+        IndexState state = esClient.indices().getSettings(g -> g.index(index).includeDefaults(true))
+                .get(index);
+        if (state == null) {
+            throw new IllegalStateException("No settings returned for index '" + index + "'");
+        }
+        return new IndexTuning(
+                setting(state, settings -> timeValue(settings.refreshInterval()), "1s"),
+                setting(state, IndexSettings::numberOfReplicas, "1")
+        );
+    }
+
+    private static String setting(IndexState state, Function<IndexSettings, String> getter, String fallback) {
+        for (IndexSettings settings : new IndexSettings[]{state.settings(), state.defaults()}) {
+            if (settings == null) {
+                continue;
+            }
+            // Returned nested under "index" unless flat settings were requested
+            IndexSettings indexSettings = settings.index() != null ? settings.index() : settings;
+            String value = getter.apply(indexSettings);
+            if (value != null) {
+                return value;
+            }
+        }
+        return fallback;
+    }
+
+    private static String timeValue(Time time) {
+        if (time == null) {
+            return null;
+        }
+        return time.isOffset() ? Integer.toString(time.offset()) : time.time();
+    }
+
+    private final class Job implements BulkListener<CopyItem> {
+
+        private final long startNanos = System.nanoTime();
+        private final LongAdder copied = new LongAdder();
+        private final LongAdder conflicts = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder retried = new LongAdder();
+        private final LongAdder caughtUp = new LongAdder();
+        private final LongAdder carriedBack = new LongAdder();
+        private final AtomicLong outstanding = new AtomicLong();
+        private volatile String phase = "PREPARING";
+        private volatile String source;
+        private volatile String target;
+        private volatile String writeIndex;
+        private volatile IndexTuning sourceTuning;
+        private volatile long total;
+        private volatile long catchUpFrom;
+        private volatile String error;
+        private volatile long endNanos;
+        private volatile BulkIngester<CopyItem> ingester;
+
+        boolean running() {
+            return !phase.equals("DONE") && !phase.equals("FAILED");
+        }
+
+        void run() {
+            try {
+                source = indexManager.readIndex();
+                sourceTuning = tuning(source);
+                writeIndex = indexManager.writeIndex();
+                if (!writeIndex.equals(source)) {
+                    log.info("Resuming reindex from '{}' into '{}'", source, writeIndex);
+                    target = writeIndex;
+                    applySettings(target, IndexTuning.BULK_LOAD);
+                } else {
+                    target = indexManager.createNextVersion();
+                }
+                // Writes from here on may be missed by the scroll and are replayed before the swap.
+                // The margin covers clock skew between writers and documents stamped before they
+                // were sent, e.g. while waiting for a retry
+                catchUpFrom = System.currentTimeMillis() - catchUpMarginMs;
+                // Writes acked by the source since its last refresh are invisible to the scroll until then
+                esClient.indices().refresh(r -> r.index(source));
+                total = esClient.count(c -> c.index(source)).count();
+                log.info("Reindexing {} documents from '{}' into '{}' with {} slices", total, source, target, slices);
+
+                phase = "COPYING";
+                copy();
+                if (failed.sum() > 0) {
+                    throw new IllegalStateException(failed.sum() + " documents could not be copied");
+                }
+
+                phase = "RESTORING_SETTINGS";
+                applySettings(target, sourceTuning);
+                esClient.indices().refresh(r -> r.index(target));
+
+                phase = "FORCE_MERGING";
+                forceMerge();
+
+                phase = "CATCHING_UP";
+                catchUp();
+
+                phase = "SWAPPING_ALIAS";
+                indexManager.swapReadAlias(source, target);
+                indexGeneration.bump();
+
+                phase = "DONE";
+                log.info("Reindex into '{}' finished: {} copied, {} newer in target, {} replayed, in {} ms", target,
+                        copied.sum(), conflicts.sum(), caughtUp.sum(), elapsedMillis());
+            } catch (Exception e) {
+                error = e.getMessage();
+                log.error("Reindex from '{}' into '{}' failed during copy or swap: {}", source, target, e.getMessage(), e);
+                // Clear the flag so the rollback requests can still be sent
+                boolean interrupted = e instanceof InterruptedException || Thread.interrupted();
+                rollBack();
+                phase = "FAILED";
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            } finally {
+                endNanos = System.nanoTime();
+            }
+        }
+
+        private void copy() throws Exception {
+            ingester = BulkIngester.of(b -> b
+                    .client(esClient)
+                    .maxOperations(batchSize)
+                    .maxConcurrentRequests(maxConcurrentRequests)
+                    // Retries are re-added after the final flush below and would otherwise never be sent
+                    .flushInterval(flushIntervalMs, TimeUnit.MILLISECONDS)
+                    .listener(this)
+            );
+            try {
+                List<Future<?>> workers = new ArrayList<>(slices);
+                for (int slice = 0; slice < slices; slice++) {
+                    int sliceId = slice;
+                    workers.add(executor.submit(() -> {
+                        copySlice(sliceId);
+                        return null;
+                    }));
+                }
+                for (Future<?> worker : workers) {
+                    try {
+                        worker.get();
+                    } catch (ExecutionException e) {
+                        workers.forEach(w -> w.cancel(true));
+                        throw e.getCause() instanceof Exception cause ? cause : e;
+                    }
+                }
+                ingester.flush();
+                awaitCompletion();
+            } finally {
+                ingester.close();
+            }
+        }
+
+        private void copySlice(int sliceId) throws IOException {
+            scroll(source, null, sliceId, slices, JsonData.class, hits -> {
+                for (Hit<JsonData> hit : hits) {
+                    add(new CopyItem(hit.id(), hit.source(), 0));
+                }
+            });
+        }
+
+        private <T> void scroll(String index, Query query, int sliceId, int sliceCount, Class<T> type,
+                                PageHandler<T> handler) throws IOException {
+            SearchResponse<T> response = esClient.search(s -> {
+                        if (query != null) {
+                            s.query(query);
+                        }
+                        s.index(index)
+                                .size(batchSize)
+                                .scroll(t -> t.time(scrollKeepAlive))
+                                .sort(so -> so.doc(d -> d));
+                        if (sliceCount > 1) {
+                            s.slice(sl -> sl.id(Integer.toString(sliceId)).max(sliceCount));
+                        }
+                        return s;
+                    },
+                    type
+            );
+            String scrollId = response.scrollId();
+            List<Hit<T>> hits = response.hits().hits();
+            try {
+                while (!hits.isEmpty()) {
+                    handler.accept(hits);
+                    String currentScrollId = scrollId;
+                    ScrollResponse<T> next = esClient.scroll(sc -> sc
+                                    .scrollId(currentScrollId)
+                                    .scroll(t -> t.time(scrollKeepAlive)),
+                            type
+                    );
+                    scrollId = next.scrollId();
+                    hits = next.hits().hits();
+                }
+            } finally {
+                if (scrollId != null) {
+                    String finalScrollId = scrollId;
+                    esClient.clearScroll(c -> c.scrollId(finalScrollId));
+                }
+            }
+        }
+
+        private void add(CopyItem item) {
+            outstanding.incrementAndGet();
+            ingester.add(op -> op.create(c -> c
+                    .index(target)
+                    .id(item.id())
+                    .document(item.source())
+            ), item);
+        }
+
+        private synchronized void awaitCompletion() throws InterruptedException {
+            while (outstanding.get() > 0) {
+                wait(flushIntervalMs);
+            }
+        }
+
+        private void complete() {
+            if (outstanding.decrementAndGet() == 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request, List<CopyItem> contexts) {
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, List<CopyItem> contexts, BulkResponse response) {
+            List<BulkResponseItem> items = response.items();
+            for (int i = 0; i < items.size(); i++) {
+                BulkResponseItem item = items.get(i);
+                CopyItem copy = contexts.get(i);
+                if (item.error() == null) {
+                    copied.increment();
+                    complete();
+                } else if (item.status() == 409) {
+                    // Already in a resumed target, written there while the write alias pointed at it
+                    conflicts.increment();
+                    complete();
+                } else if (item.status() == 429) {
+                    retryOrFail(copy, "rejected (429)");
+                } else {
+                    fail(copy, item.error().reason());
+                    complete();
+                }
+            }
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, List<CopyItem> contexts, Throwable failure) {
+            log.warn("Reindex bulk request {} with {} operations failed: {}", executionId, contexts.size(),
+                    failure.getMessage());
+            for (CopyItem copy : contexts) {
+                retryOrFail(copy, failure.getMessage());
+            }
+        }
+
+        private void retryOrFail(CopyItem copy, String reason) {
+            if (copy.attempt() >= maxRetries) {
+                fail(copy, "gave up after " + copy.attempt() + " retries: " + reason);
+                complete();
+                return;
+            }
+            retried.increment();
+            long delay = retryBackoffMs << Math.min(copy.attempt(), 10);
+            retryScheduler.schedule(() -> {
+                add(new CopyItem(copy.id(), copy.source(), copy.attempt() + 1));
+                complete();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        private void fail(CopyItem copy, String reason) {
+            failed.increment();
+            if (failed.sum() <= MAX_LOGGED_FAILURES) {
+                log.warn("Could not copy product '{}' into '{}': {}", copy.id(), target, reason);
+            }
+        }
+
+        /**
+         * Points the write alias at the target and replays what was written to the source since
+         * the job started. The source receives no new writes after the move, so once it is
+         * refreshed the range query sees every one of them.
+         */
+        private void catchUp() throws IOException {
+            if (!target.equals(writeIndex)) {
+                indexManager.moveWriteAlias(source, target);
+                writeIndex = target;
+            }
+            log.info("Writes go to '{}' and are not searchable until the read alias is swapped", target);
+            esClient.indices().refresh(r -> r.index(source));
+            long since = catchUpFrom;
+            Query writtenSince = Query.of(q -> q.range(r -> r.untyped(u -> u
+                    .field("indexed_at")
+                    .gte(JsonData.of(since))
+            )));
+            scroll(source, writtenSince, 0, 1, ProductDocument.class, hits -> copyNewer(hits, target, caughtUp));
+            esClient.indices().refresh(r -> r.index(target));
+        }
+
+        /**
+         * Undoes the write diversion of a failed job, unless the read alias already points at the
+         * target, in which case the reindex went through and there is nothing to undo.
+         */
+        private void rollBack() {
+            if (source == null || target == null || !target.equals(writeIndex)) {
+                return;
+            }
+            phase = "ROLLING_BACK";
+            try {
+                if (indexManager.readIndex().equals(target)) {
+                    log.warn("Read alias already points to '{}'; nothing to roll back", target);
+                    return;
+                }
+                applySettings(target, sourceTuning);
+                indexManager.moveWriteAlias(target, source);
+                writeIndex = source;
+                esClient.indices().refresh(r -> r.index(target));
+                scroll(target, null, 0, 1, ProductDocument.class, hits -> copyNewer(hits, source, carriedBack));
+                log.warn("Reindex rolled back: writes go to '{}' again, {} documents written to '{}' during the "
+                        + "job were copied back", source, carriedBack.sum(), target);
+            } catch (Exception e) {
+                String state = target.equals(writeIndex)
+                        ? "writes still go to '" + target + "' and are not searchable; start the reindex again "
+                                + "to resume into it"
+                        : "writes go to '" + source + "' again, but documents written to '" + target
+                                + "' during the job may be missing from it";
+                error = error + "; rollback failed, " + state + ": " + e.getMessage();
+                log.error("Reindex rollback failed, {}", state, e);
+            }
+        }
+
+        /**
+         * Copies documents into {@code into} where they are missing or have an older
+         * {@code indexed_at}. Copies of the same write carry the same timestamp and are skipped.
+         * Overwrites are conditional on the sequence number read here, so a write that reaches
+         * {@code into} in the meantime is never replaced by an older version.
+         */
+        private void copyNewer(List<Hit<ProductDocument>> hits, String into, LongAdder counter) throws IOException {
+            List<String> ids = hits.stream().map(Hit::id).toList();
+            MgetResponse<ProductDocument.WriteTime> stored = esClient.mget(m -> m
+                            .index(into)
+                            .ids(ids)
+                            .sourceIncludes("indexed_at"),
+                    ProductDocument.WriteTime.class
+            );
+            BulkRequest.Builder bulk = new BulkRequest.Builder();
+            int operations = 0;
+            for (int i = 0; i < hits.size(); i++) {
+                Hit<ProductDocument> hit = hits.get(i);
+                ProductDocument document = hit.source();
+                MultiGetResponseItem<ProductDocument.WriteTime> item = stored.docs().get(i);
+                if (document == null) {
+                    continue;
+                }
+                if (!item.isResult()) {
+                    throw new IllegalStateException("Could not read '" + hit.id() + "' from '" + into + "': "
+                            + item.failure().error().reason());
+                }
+                GetResult<ProductDocument.WriteTime> current = item.result();
+                if (!current.found()) {
+                    bulk.operations(op -> op.create(c -> c.index(into).id(hit.id()).document(document)));
+                } else if (isNewer(document, current.source())) {
+                    bulk.operations(op -> op.index(x -> x
+                            .index(into)
+                            .id(hit.id())
+                            .document(document)
+                            .ifSeqNo(current.seqNo())
+                            .ifPrimaryTerm(current.primaryTerm())
+                    ));
+                } else {
+                    continue;
+                }
+                operations++;
+            }
+            if (operations == 0) {
+                return;
+            }
+            int lost = 0;
+            for (BulkResponseItem item : esClient.bulk(bulk.build()).items()) {
+                if (item.error() == null) {
+                    counter.increment();
+                } else if (item.status() != 409) {
+                    // 409: written to it since it was read, so it already has the newer version
+                    lost++;
+                    log.warn("Could not copy product '{}' to '{}': {}", item.id(), into, item.error().reason());
+                }
+            }
+            if (lost > 0) {
+                throw new IllegalStateException(lost + " documents could not be copied to '" + into + "'");
+            }
+        }
+
+        private static boolean isNewer(ProductDocument document, ProductDocument.WriteTime stored) {
+            if (document.indexedAt() == null) {
+                return false;
+            }
+            return stored == null || stored.indexedAt() == null || document.indexedAt() > stored.indexedAt();
+        }
+
+        private void applySettings(String index, IndexTuning tuning) throws IOException {
+            esClient.indices().putSettings(p -> p
+                    .index(index)
+                    .settings(s -> s
+                            .refreshInterval(t -> t.time(tuning.refreshInterval()))
+                            .numberOfReplicas(tuning.replicas())
+                    )
+            );
+        }
+
+        /**
+         * Runs as a task and is polled, since merging a large index takes longer than the socket
+         * timeout.
+         */
+        private void forceMerge() throws IOException, InterruptedException {
+            ForcemergeResponse response = esClient.indices().forcemerge(f -> f
+                    .index(target)
+                    .maxNumSegments(maxSegments)
+                    .waitForCompletion(false)
+            );
+            String taskId = response.task();
+            if (taskId == null) {
+                return;
+            }
+            while (!esClient.tasks().get(g -> g.taskId(taskId)).completed()) {
+                Thread.sleep(1000);
+            }
+        }
+
+        private long elapsedMillis() {
+            long end = endNanos != 0 ? endNanos : System.nanoTime();
+            return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+        }
+
+        ReindexStatus status() {
+            long elapsedMillis = elapsedMillis();
+            long copiedCount = copied.sum();
+            return new ReindexStatus(
+                    phase,
+                    source,
+                    target,
+                    writeIndex,
+                    total,
+                    copiedCount,
+                    conflicts.sum(),
+                    failed.sum(),
+                    retried.sum(),
+                    caughtUp.sum(),
+                    carriedBack.sum(),
+                    elapsedMillis,
+                    elapsedMillis > 0 ? copiedCount * 1000.0 / elapsedMillis : 0.0,
+                    error
+            );
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.productsearch.service;
+
+import java.util.Locale;
+
+/**
+ * Identifies a cached search result. {@code params} carries everything besides the query text that
+ * changes the result (paging, filters, leg window sizes) in a canonical string form.
+ */
+public record SearchCacheKey(String mode, String query, String params, long generation) {
+
+    public static SearchCacheKey of(String mode, String query, String params, long generation) {
+        return new SearchCacheKey(mode, normalize(query), params, generation);
+    }
+
+    static String normalize(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+}
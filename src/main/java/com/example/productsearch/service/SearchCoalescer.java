@@ -0,0 +1,74 @@
+package com.example.productsearch.service;
+
+import com.example.productsearch.model.CoalescingStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single-flight execution of identical searches. The first caller for a key runs the search;
+ * callers arriving while it is in flight wait on the same future instead of issuing their own
+ * backend request. Nothing is retained once the search completes, so this never serves stale data.
+ */
+@Component
+public class SearchCoalescer {
+
+    private final ConcurrentMap<SearchCacheKey, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder leaders = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    @Value("${search.coalesce.max-wait-ms:5000}")
+    private long maxWaitMs;
+
+    @FunctionalInterface
+    public interface Call<T> {
+        T call() throws IOException;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(SearchCacheKey key, Call<T> call) throws IOException {
+        CompletableFuture<Object> own = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, own);
+        if (existing == null) {
+            leaders.increment();
+            try {
+                T result = call.call();
+                own.complete(result);
+                return result;
+            } catch (IOException | RuntimeException e) {
+                own.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, own);
+            }
+        }
+
+        coalesced.increment();
+        try {
+            return (T) existing.get(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            throw new IOException("Timed out after " + maxWaitMs + " ms waiting for in-flight " + key.mode()
+                    + " search for '" + key.query() + "'", e);
+        } catch (ExecutionException e) {
+            // Unchecked failures are rethrown as they are so waiters get the same status mapping as
+            // the leader, e.g. 400 for a rejected argument and 503 when overloaded
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for in-flight search", e);
+        }
+    }
+
+    public CoalescingStats stats() {
+        return new CoalescingStats(leaders.sum(), coalesced.sum(), timeouts.sum(), inFlight.size());
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Opaque pagination cursor: a point-in-time id plus the {@code search_after} sort values of the
+ * last hit of the previous page, serialized as URL-safe Base64 JSON.
+ */
+record SearchCursor(String pitId, List<FieldValue> searchAfter) {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    String encode() {
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("pit", pitId);
+        ArrayNode after = node.putArray("after");
+        for (FieldValue value : searchAfter) {
+            if (value.isLong()) {
+                after.add(value.longValue());
+            } else if (value.isDouble()) {
+                after.add(value.doubleValue());
+            } else if (value.isBoolean()) {
+                after.add(value.booleanValue());
+            } else if (value.isString()) {
+                after.add(value.stringValue());
+            } else {
+                after.addNull();
+            }
+        }
+        try {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(MAPPER.writeValueAsBytes(node));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode search cursor", e);
+        }
+    }
+
+    static SearchCursor decode(String cursor) {
+        JsonNode node;
+        try {
+            node = MAPPER.readTree(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException | IOException e) {
+            throw new IllegalArgumentException("Malformed search cursor", e);
+        }
+        String pitId = node.path("pit").asText(null);
+        if (pitId == null || !node.path("after").isArray()) {
+            throw new IllegalArgumentException("Malformed search cursor");
+        }
+
+        List<FieldValue> searchAfter = new ArrayList<>();
+        for (JsonNode value : node.get("after")) {
+            if (value.isIntegralNumber()) {
+                searchAfter.add(FieldValue.of(value.longValue()));
+            } else if (value.isNumber()) {
+                searchAfter.add(FieldValue.of(value.doubleValue()));
+            } else if (value.isBoolean()) {
+                searchAfter.add(FieldValue.of(value.booleanValue()));
+            } else if (value.isTextual()) {
+                searchAfter.add(FieldValue.of(value.textValue()));
+            } else {
+                searchAfter.add(FieldValue.NULL);
+            }
+        }
+        return new SearchCursor(pitId, searchAfter);
+    }
+}
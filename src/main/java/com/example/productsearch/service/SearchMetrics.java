@@ -0,0 +1,108 @@
+package com.example.productsearch.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer instrumentation for the search path. Timers are tagged by {@code endpoint} (the
+ * search mode) and {@code phase}:
+ * <ul>
+ *   <li>{@code inference} - ELSER token expansion</li>
+ *   <li>{@code search} - client-observed Elasticsearch call, including response decoding</li>
+ *   <li>{@code transport} - the round trip minus the ES-reported {@code took}: network and queueing.
+ *       Where decoding is not timed separately ({@code _msearch}) it is included here</li>
+ *   <li>{@code deserialization} - decompressing and decoding the response body</li>
+ *   <li>{@code mapping} - turning hits into response objects</li>
+ *   <li>{@code serialization} - writing the HTTP response body</li>
+ * </ul>
+ */
+@Component
+public class SearchMetrics {
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    private final MeterRegistry registry;
+
+    @Value("${search.log.sample-rate:0.01}")
+    private double logSampleRate;
+
+    public SearchMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void recordPhase(String endpoint, String phase, long nanos) {
+        Timer.builder("search.phase")
+                .description("Time spent per phase of a search request")
+                .tag("endpoint", endpoint)
+                .tag("phase", phase)
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the client-observed latency of an Elasticsearch call next to the {@code took} the
+     * cluster reported for it.
+     */
+    public void recordSearch(String endpoint, long tookMillis, long clientNanos) {
+        long tookNanos = TimeUnit.MILLISECONDS.toNanos(tookMillis);
+        recordPhase(endpoint, "search", clientNanos);
+        recordPhase(endpoint, "transport", Math.max(0, clientNanos - tookNanos));
+        recordTook(endpoint, tookMillis);
+    }
+
+    /**
+     * Like {@link #recordSearch(String, long, long)} for a call whose response was received and
+     * decoded in separate steps, so decoding is reported as its own phase instead of as transport.
+     */
+    public void recordSearch(String endpoint, long tookMillis, long roundTripNanos, long deserializationNanos) {
+        long tookNanos = TimeUnit.MILLISECONDS.toNanos(tookMillis);
+        recordPhase(endpoint, "search", roundTripNanos + deserializationNanos);
+        recordPhase(endpoint, "transport", Math.max(0, roundTripNanos - tookNanos));
+        recordPhase(endpoint, "deserialization", deserializationNanos);
+        recordTook(endpoint, tookMillis);
+    }
+
+    private void recordTook(String endpoint, long tookMillis) {
+        Timer.builder("search.es.took")
+                .description("Search time reported by Elasticsearch")
+                .tag("endpoint", endpoint)
+                .publishPercentiles(PERCENTILES)
+                .register(registry)
+                .record(tookMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void recordResults(String endpoint, int count) {
+        DistributionSummary.builder("search.results")
+                .description("Hits returned per search")
+                .tag("endpoint", endpoint)
+                .publishPercentiles(PERCENTILES)
+                .register(registry)
+                .record(count);
+    }
+
+    public void recordError(String endpoint, String exception) {
+        Counter.builder("search.errors")
+                .description("Failed search requests")
+                .tag("endpoint", endpoint)
+                .tag("exception", exception)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Whether the current request should emit its per-query log line. Keeps INFO logging off the
+     * hot path while still leaving a representative trail.
+     */
+    public boolean sampleLog() {
+        return logSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < logSampleRate;
+    }
+}
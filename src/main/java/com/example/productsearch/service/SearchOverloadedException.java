@@ -0,0 +1,20 @@
+package com.example.productsearch.service;
+
+/**
+ * Thrown when a search is shed instead of being queued, either because the adaptive concurrency
+ * limit is reached or because the inference-backed path is unavailable and cannot be degraded.
+ * Mapped to {@code 503 Service Unavailable} with a {@code Retry-After} header.
+ */
+public class SearchOverloadedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public SearchOverloadedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long retryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
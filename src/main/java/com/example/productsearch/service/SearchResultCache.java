@@ -0,0 +1,34 @@
+package com.example.productsearch.service;
+
+import com.example.productsearch.model.SearchCacheStats;
+
+import java.io.IOException;
+
+/**
+ * Result cache in front of the search methods of {@link ProductService}. Values are immutable
+ * result pages or hit lists. The implementation is chosen by {@code search.cache.enabled}; see
+ * {@code SearchCacheConfig}.
+ */
+public interface SearchResultCache {
+
+    <T> T getIfPresent(SearchCacheKey key);
+
+    <T> void put(SearchCacheKey key, T results);
+
+    SearchCacheStats stats();
+
+    default <T> T get(SearchCacheKey key, Loader<T> loader) throws IOException {
+        T cached = getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        T results = loader.load();
+        put(key, results);
+        return results;
+    }
+
+    @FunctionalInterface
+    interface Loader<T> {
+        T load() throws IOException;
+    }
+}
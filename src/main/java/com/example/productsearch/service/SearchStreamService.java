@@ -0,0 +1,189 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.json.JsonpUtils;
+import co.elastic.clients.transport.rest5_client.low_level.Request;
+import co.elastic.clients.transport.rest5_client.low_level.Response;
+import co.elastic.clients.transport.rest5_client.low_level.Rest5Client;
+import com.example.productsearch.model.Product;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Search that writes hits to the client as they are decoded. The low-level client buffers the raw
+ * response body before it returns, so the export is bounded by {@code search.stream.max-size};
+ * that body is then walked with a Jackson {@link JsonParser}, one hit at a time, so no
+ * {@code SearchResponse}, result list or per-hit object graph is built on top of it.
+ * <p>
+ * The request goes through the adaptive concurrency limiter and reports to the inference circuit
+ * breaker. An export cannot be degraded to lexical results without the consumer noticing, so it is
+ * shed with a 503 while the breaker is open.
+ */
+@Service
+public class SearchStreamService {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchStreamService.class);
+    private static final String FILTER_PATH = "hits.total.value,hits.hits._source,hits.hits.highlight";
+
+    private final ElasticsearchClient esClient;
+    private final Rest5Client restClient;
+    private final SearchMetrics metrics;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final InferenceCircuitBreaker inferenceBreaker;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectWriter productWriter = objectMapper.writerFor(Product.class)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    @Value("${search.stream.max-size:2000}")
+    private int maxSize;
+
+    @Value("${search.source.includes:id,name,category,price,image_url}")
+    private List<String> sourceIncludes;
+
+    public SearchStreamService(ElasticsearchClient esClient, Rest5Client restClient, SearchMetrics metrics,
+                               AdaptiveConcurrencyLimiter limiter, InferenceCircuitBreaker inferenceBreaker) {
+        this.esClient = esClient;
+        this.restClient = restClient;
+        this.metrics = metrics;
+        this.limiter = limiter;
+        this.inferenceBreaker = inferenceBreaker;
+    }
+
+    @FunctionalInterface
+    public interface HitStream {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Executes the search eagerly, so Elasticsearch errors surface before the response is
+     * committed, and returns a writer that streams {@code {"total": n, "products": [...]}}.
+     */
+    public HitStream streamSearch(String mode, String query, int size) throws IOException {
+        if (!"semantic".equals(mode) && !"hybrid".equals(mode)) {
+            throw new IllegalArgumentException("Unknown mode '" + mode + "'");
+        }
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be at least 1");
+        }
+        Query esQuery = "hybrid".equals(mode) ? ProductService.hybridQuery(query) : ProductService.semanticQuery(query);
+        SearchRequest searchRequest = SearchRequest.of(s -> s
+                .query(esQuery)
+                .size(Math.min(size, maxSize))
+                .source(src -> src.filter(f -> f.includes(sourceIncludes)))
+                .highlight(h -> h
+                        .fields("description", f -> f
+                                .numberOfFragments(1)
+                        )
+                )
+        );
+
+        Request request = new Request("POST", "/" + ProductService.INDEX_NAME + "/_search");
+        request.addParameter("filter_path", FILTER_PATH);
+        request.setJsonEntity(JsonpUtils.toJsonString(searchRequest, esClient._jsonpMapper()));
+        if (!inferenceBreaker.tryAcquire()) {
+            throw new SearchOverloadedException("Semantic search is temporarily unavailable",
+                    inferenceBreaker.retryAfterSeconds());
+        }
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = limiter.execute(() -> restClient.performRequest(request));
+        } catch (IOException | RuntimeException e) {
+            inferenceBreaker.onError(e);
+            throw e;
+        }
+        inferenceBreaker.onSuccess(System.nanoTime() - start);
+        metrics.recordPhase("stream", "search", System.nanoTime() - start);
+
+        return out -> {
+            long writeStart = System.nanoTime();
+            try (InputStream in = response.getEntity().getContent();
+                 JsonParser parser = objectMapper.createParser(in);
+                 JsonGenerator generator = objectMapper.createGenerator(out)) {
+                generator.writeStartObject();
+                if (parser.nextToken() == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String field = parser.currentName();
+                        parser.nextToken();
+                        if ("hits".equals(field)) {
+                            int written = writeHits(parser, generator);
+                            metrics.recordResults("stream", written);
+                            log.debug("Streamed {} {} results for '{}'", written, mode, query);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+                generator.writeEndObject();
+            } finally {
+                // Decoding and writing are interleaved here, so they are reported as one phase
+                metrics.recordPhase("stream", "serialization", System.nanoTime() - writeStart);
+            }
+        };
+    }
+
+    private int writeHits(JsonParser parser, JsonGenerator generator) throws IOException {
+        int written = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("total".equals(field)) {
+                JsonNode total = parser.readValueAsTree();
+                generator.writeNumberField("total", total.path("value").asLong());
+            } else if ("hits".equals(field)) {
+                generator.writeArrayFieldStart("products");
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    if (writeHit(parser, generator)) {
+                        written++;
+                    }
+                }
+                generator.writeEndArray();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return written;
+    }
+
+    private boolean writeHit(JsonParser parser, JsonGenerator generator) throws IOException {
+        Product product = null;
+        String snippet = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("_source".equals(field)) {
+                product = parser.readValueAs(Product.class);
+            } else if ("highlight".equals(field)) {
+                JsonNode highlight = parser.readValueAsTree();
+                snippet = highlight.path("description").path(0).asText(null);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (product == null) {
+            return false;
+        }
+        if (product.description() == null && snippet != null) {
+            product = new Product(product.id(), product.name(), snippet, product.category(),
+                    product.price(), product.imageUrl());
+        }
+        productWriter.writeValue(generator, product);
+        return true;
+    }
+}
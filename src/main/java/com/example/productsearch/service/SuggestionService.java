@@ -0,0 +1,419 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.query_dsl.TextQueryType;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.example.productsearch.model.Product;
+import com.example.productsearch.model.SuggestStats;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Typeahead suggestions served from memory. Product names and searched queries are kept in a
+ * sorted map keyed by every word suffix of the normalized phrase ("running shoes pro",
+ * "shoes pro", "pro"), so a prefix lookup is one range scan that also matches words inside a
+ * name. Phrases carry a popularity weight (one per write or search); when the dictionary grows
+ * past its bound the least popular phrases are dropped. Searched queries are only admitted once
+ * they have returned results a minimum number of times, so one-off and mistyped queries are never
+ * suggested to other users.
+ * <p>
+ * Finished suggestion lists are kept per prefix in a small Caffeine cache, which absorbs the
+ * one- and two-letter prefixes that would otherwise scan large ranges. Prefixes the dictionary
+ * cannot fill are completed by a {@code bool_prefix} query on the {@code name.suggest}
+ * {@code search_as_you_type} field, whose results are added to the dictionary. Prefixes for which
+ * that query found everything there is are remembered for a while, so typing on a prefix with
+ * few matches does not hit the cluster on every keystroke.
+ */
+@Service
+public class SuggestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(SuggestionService.class);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    /** Separates the suffix from the full phrase in dictionary keys; sorts before any character. */
+    private static final char KEY_SEPARATOR = '\u0000';
+    private static final String ENDPOINT = "suggest";
+
+    private final ElasticsearchClient esClient;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final SearchMetrics metrics;
+    private final ConcurrentHashMap<String, Phrase> phrases = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, Phrase> keys = new ConcurrentSkipListMap<>();
+    // ConcurrentSkipListMap.size() walks the whole map
+    private final AtomicInteger keyCount = new AtomicInteger();
+    private final ReentrantLock trimLock = new ReentrantLock();
+    private final LongAdder fallbacks = new LongAdder();
+    private Cache<String, List<String>> hotPrefixes;
+    private Cache<String, Boolean> exhaustedPrefixes;
+    private Cache<String, AtomicLong> queryCandidates;
+
+    @Value("${suggest.max-size:10}")
+    private int maxSize;
+
+    @Value("${suggest.dictionary.max-phrases:50000}")
+    private int maxPhrases;
+
+    @Value("${suggest.dictionary.max-words:8}")
+    private int maxWords;
+
+    @Value("${suggest.scan-limit:2000}")
+    private int scanLimit;
+
+    @Value("${suggest.cache.max-size:10000}")
+    private long cacheMaxSize;
+
+    @Value("${suggest.cache.ttl-seconds:30}")
+    private long cacheTtlSeconds;
+
+    @Value("${suggest.fallback.enabled:true}")
+    private boolean fallbackEnabled;
+
+    @Value("${suggest.fallback.min-prefix:2}")
+    private int fallbackMinPrefix;
+
+    @Value("${suggest.fallback.negative-ttl-seconds:300}")
+    private long fallbackNegativeTtlSeconds;
+
+    @Value("${suggest.query.min-count:3}")
+    private long queryMinCount;
+
+    @Value("${suggest.query.candidates-max-size:10000}")
+    private long queryCandidatesMaxSize;
+
+    @Value("${suggest.query.window-minutes:60}")
+    private long queryWindowMinutes;
+
+    @Value("${suggest.bootstrap-size:10000}")
+    private int bootstrapSize;
+
+    public SuggestionService(ElasticsearchClient esClient, AdaptiveConcurrencyLimiter limiter, SearchMetrics metrics) {
+        this.esClient = esClient;
+        this.limiter = limiter;
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    void init() {
+        hotPrefixes = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(cacheTtlSeconds))
+                .recordStats()
+                .build();
+        exhaustedPrefixes = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(fallbackNegativeTtlSeconds))
+                .build();
+        queryCandidates = Caffeine.newBuilder()
+                .maximumSize(queryCandidatesMaxSize)
+                .expireAfterWrite(Duration.ofMinutes(queryWindowMinutes))
+                .build();
+    }
+
+    /**
+     * Up to {@code size} suggestions for {@code prefix}, most popular first.
+     *
+     * @throws IllegalArgumentException if {@code size} is below one
+     */
+    public List<String> suggest(String prefix, Integer size) {
+        if (size != null && size < 1) {
+            throw new IllegalArgumentException("size must be at least 1");
+        }
+        String normalized = normalize(prefix);
+        if (normalized.isEmpty()) {
+            return List.of();
+        }
+        int limit = Math.min(size != null ? size : maxSize, maxSize);
+
+        long start = System.nanoTime();
+        List<String> cached = hotPrefixes.getIfPresent(normalized);
+        List<String> suggestions = cached != null ? cached : lookup(normalized);
+        metrics.recordPhase(ENDPOINT, "memory", System.nanoTime() - start);
+        if (suggestions.size() < limit && needsFallback(normalized)) {
+            try {
+                suggestions = merge(suggestions, searchPrefix(normalized));
+            } catch (IOException | ElasticsearchException | SearchOverloadedException e) {
+                // Serve what memory has; not cached so the next keystroke tries again
+                log.debug("Suggestion fallback for '{}' failed: {}", normalized, e.getMessage());
+                return head(suggestions, limit);
+            }
+            if (suggestions.size() < maxSize) {
+                // The index has no further names for this prefix
+                exhaustedPrefixes.put(normalized, Boolean.TRUE);
+            }
+        }
+        if (suggestions != cached) {
+            hotPrefixes.put(normalized, suggestions);
+        }
+        return head(suggestions, limit);
+    }
+
+    /**
+     * Adds a product name that was written to (or is already in) the index.
+     */
+    public void recordProduct(String name) {
+        record(name);
+    }
+
+    /**
+     * Counts a search that returned results. A query enters the dictionary once it has been counted
+     * {@code suggest.query.min-count} times within the window, carrying those counts as its weight;
+     * after that every search raises its weight like a product write does.
+     */
+    public void recordQuery(String query) {
+        if (query == null) {
+            return;
+        }
+        String display = WHITESPACE.matcher(query.strip()).replaceAll(" ");
+        if (display.isEmpty()) {
+            return;
+        }
+        String normalized = normalize(display);
+        Phrase known = phrases.get(normalized);
+        if (known != null) {
+            known.weight.incrementAndGet();
+            return;
+        }
+        long count = queryCandidates.get(normalized, key -> new AtomicLong()).incrementAndGet();
+        if (count >= queryMinCount) {
+            queryCandidates.invalidate(normalized);
+            phrase(display, true).weight.addAndGet(count);
+        }
+    }
+
+    /**
+     * Seeds the dictionary with product names already in the index, so suggestions survive a
+     * restart without waiting for writes.
+     */
+    public int loadFromIndex() throws IOException {
+        SearchResponse<Product> response = esClient.search(s -> s
+                        .index(ProductService.INDEX_NAME)
+                        .size(bootstrapSize)
+                        .source(src -> src.filter(f -> f.includes("name"))),
+                Product.class
+        );
+        int loaded = 0;
+        for (Hit<Product> hit : response.hits().hits()) {
+            if (hit.source() != null && hit.source().name() != null) {
+                record(hit.source().name());
+                loaded++;
+            }
+        }
+        log.info("Loaded {} product names into the suggestion dictionary", loaded);
+        return loaded;
+    }
+
+    public SuggestStats stats() {
+        return new SuggestStats(
+                phrases.size(),
+                keyCount.get(),
+                hotPrefixes.estimatedSize(),
+                hotPrefixes.stats().hitRate(),
+                fallbacks.sum()
+        );
+    }
+
+    private void record(String text) {
+        if (text == null) {
+            return;
+        }
+        String display = WHITESPACE.matcher(text.strip()).replaceAll(" ");
+        if (display.isEmpty()) {
+            return;
+        }
+        phrase(display, true).weight.incrementAndGet();
+    }
+
+    /**
+     * Returns the phrase for {@code display}, adding it to the dictionary if it is new. The hot
+     * prefix cache is only invalidated for new phrases; weight changes show up once entries expire.
+     */
+    private Phrase phrase(String display, boolean invalidate) {
+        String normalized = normalize(display);
+        Phrase existing = phrases.get(normalized);
+        if (existing != null) {
+            return existing;
+        }
+        Phrase created = new Phrase(display, normalized);
+        existing = phrases.putIfAbsent(normalized, created);
+        if (existing != null) {
+            return existing;
+        }
+        for (String key : created.keys(maxWords)) {
+            if (keys.put(key, created) == null) {
+                keyCount.incrementAndGet();
+            }
+            if (invalidate) {
+                invalidatePrefixes(key);
+            }
+        }
+        if (phrases.size() > maxPhrases) {
+            trim();
+        }
+        return created;
+    }
+
+    private boolean needsFallback(String prefix) {
+        return fallbackEnabled && prefix.length() >= fallbackMinPrefix
+                && exhaustedPrefixes.getIfPresent(prefix) == null;
+    }
+
+    private List<String> lookup(String prefix) {
+        Set<Phrase> matches = new HashSet<>();
+        int scanned = 0;
+        for (Phrase phrase : keys.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            matches.add(phrase);
+            if (++scanned >= scanLimit) {
+                break;
+            }
+        }
+        return matches.stream()
+                .sorted(Comparator.comparingLong((Phrase p) -> p.weight.get()).reversed()
+                        .thenComparingInt(p -> p.display.length())
+                        .thenComparing(p -> p.display))
+                .limit(maxSize)
+                .map(p -> p.display)
+                .toList();
+    }
+
+    private List<String> searchPrefix(String prefix) throws IOException {
+        long start = System.nanoTime();
+        SearchResponse<Product> response = limiter.execute(() -> esClient.search(s -> s
+                        .index(ProductService.INDEX_NAME)
+                        .size(maxSize)
+                        .source(src -> src.filter(f -> f.includes("name")))
+                        .query(q -> q
+                                .multiMatch(mm -> mm
+                                        .query(prefix)
+                                        .type(TextQueryType.BoolPrefix)
+                                        .fields("name.suggest", "name.suggest._2gram", "name.suggest._3gram")
+                                )
+                        ),
+                Product.class
+        ));
+        metrics.recordPhase(ENDPOINT, "search", System.nanoTime() - start);
+        fallbacks.increment();
+
+        List<String> names = new ArrayList<>();
+        for (Hit<Product> hit : response.hits().hits()) {
+            if (hit.source() != null && hit.source().name() != null) {
+                names.add(hit.source().name());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Dictionary suggestions first, then search results, without duplicates. Names found by the
+     * search are added to the dictionary without invalidating the prefix being computed.
+     */
+    private List<String> merge(List<String> fromMemory, List<String> fromSearch) {
+        Map<String, String> merged = new LinkedHashMap<>();
+        for (String suggestion : fromMemory) {
+            merged.put(normalize(suggestion), suggestion);
+        }
+        for (String name : fromSearch) {
+            String display = WHITESPACE.matcher(name.strip()).replaceAll(" ");
+            if (display.isEmpty()) {
+                continue;
+            }
+            if (merged.size() < maxSize) {
+                merged.putIfAbsent(normalize(display), display);
+            }
+            phrase(display, false).weight.compareAndSet(0, 1);
+        }
+        return List.copyOf(merged.values());
+    }
+
+    /**
+     * Drops the least popular tenth of the dictionary. Only one thread trims; others carry on
+     * and may briefly exceed the bound.
+     */
+    private void trim() {
+        if (!trimLock.tryLock()) {
+            return;
+        }
+        try {
+            int target = maxPhrases - maxPhrases / 10;
+            int excess = phrases.size() - target;
+            if (excess <= 0) {
+                return;
+            }
+            List<Phrase> leastPopular = phrases.values().stream()
+                    .sorted(Comparator.comparingLong(p -> p.weight.get()))
+                    .limit(excess)
+                    .toList();
+            for (Phrase phrase : leastPopular) {
+                phrases.remove(phrase.normalized, phrase);
+                for (String key : phrase.keys(maxWords)) {
+                    if (keys.remove(key, phrase)) {
+                        keyCount.decrementAndGet();
+                    }
+                }
+            }
+            hotPrefixes.invalidateAll();
+            log.debug("Trimmed {} phrases from the suggestion dictionary", leastPopular.size());
+        } finally {
+            trimLock.unlock();
+        }
+    }
+
+    private void invalidatePrefixes(String key) {
+        int end = key.indexOf(KEY_SEPARATOR);
+        for (int i = 1; i <= end; i++) {
+            hotPrefixes.invalidate(key.substring(0, i));
+            exhaustedPrefixes.invalidate(key.substring(0, i));
+        }
+    }
+
+    private static List<String> head(List<String> suggestions, int limit) {
+        return suggestions.size() <= limit ? suggestions : suggestions.subList(0, limit);
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : WHITESPACE.matcher(text.strip()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Phrase {
+
+        private final String display;
+        private final String normalized;
+        private final AtomicLong weight = new AtomicLong();
+
+        Phrase(String display, String normalized) {
+            this.display = display;
+            this.normalized = normalized;
+        }
+
+        /**
+         * One key per word suffix, each followed by the full phrase so that different phrases
+         * sharing a suffix get distinct keys.
+         */
+        List<String> keys(int maxWords) {
+            List<String> keys = new ArrayList<>();
+            keys.add(normalized + KEY_SEPARATOR + normalized);
+            int words = 1;
+            for (int i = normalized.indexOf(' '); i >= 0 && words < maxWords; i = normalized.indexOf(' ', i + 1)) {
+                keys.add(normalized.substring(i + 1) + KEY_SEPARATOR + normalized);
+                words++;
+            }
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.productsearch.service;
+
+import com.example.productsearch.model.TransportStats;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.core5.pool.PoolStats;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reports occupancy of the shared Elasticsearch connection pool. A growing {@code pending} count
+ * with {@code leased == max} means requests are queueing for connections.
+ */
+@Service
+public class TransportStatsService {
+
+    private final PoolingAsyncClientConnectionManager connectionManager;
+
+    public TransportStatsService(PoolingAsyncClientConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    public TransportStats stats() {
+        Map<String, TransportStats.Pool> perHost = new TreeMap<>();
+        for (HttpRoute route : connectionManager.getRoutes()) {
+            perHost.put(route.getTargetHost().toURI(), toPool(connectionManager.getStats(route)));
+        }
+        return new TransportStats(toPool(connectionManager.getTotalStats()), perHost);
+    }
+
+    private static TransportStats.Pool toPool(PoolStats stats) {
+        return new TransportStats.Pool(stats.getLeased(), stats.getPending(), stats.getAvailable(), stats.getMax());
+    }
+}
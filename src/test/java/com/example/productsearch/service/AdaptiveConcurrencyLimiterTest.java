@@ -0,0 +1,115 @@
+package com.example.productsearch.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+
+import static com.example.productsearch.service.InferenceCircuitBreakerTest.error;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        limiter = limiter(20);
+    }
+
+    @Test
+    void growsWhileTheLimitIsInUse() throws IOException {
+        limiter = limiter(2);
+
+        // One of two slots in use: 2 + 1/2
+        limiter.execute(() -> "ok");
+        assertThat(limiter.limit()).isEqualTo(2);
+
+        // Only the nested call sees enough concurrency to grow: 2.5 + 1/2.5 + 1/2.9
+        for (int i = 0; i < 2; i++) {
+            limiter.execute(() -> limiter.execute(() -> "nested"));
+        }
+        assertThat(limiter.limit()).isEqualTo(3);
+    }
+
+    @Test
+    void doesNotGrowWhileIdle() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            limiter.execute(() -> "ok");
+        }
+
+        assertThat(limiter.limit()).isEqualTo(20);
+    }
+
+    @Test
+    void backsOffOnTransportErrors() {
+        assertThatThrownBy(() -> limiter.execute(() -> {
+            throw new IOException("connection reset");
+        })).isInstanceOf(IOException.class);
+
+        assertThat(limiter.limit()).isEqualTo(18);
+        assertThat(limiter.inFlight()).isZero();
+    }
+
+    @Test
+    void backsOffOnTooManyRequestsAndServerErrors() {
+        assertThatThrownBy(() -> limiter.execute(() -> {
+            throw error(429);
+        })).isInstanceOf(RuntimeException.class);
+        assertThatThrownBy(() -> limiter.execute(() -> {
+            throw error(503);
+        })).isInstanceOf(RuntimeException.class);
+
+        // 20 * 0.9 * 0.9
+        assertThat(limiter.limit()).isEqualTo(16);
+    }
+
+    @Test
+    void ignoresBadRequests() {
+        assertThatThrownBy(() -> limiter.execute(() -> {
+            throw error(400);
+        })).isInstanceOf(RuntimeException.class);
+
+        assertThat(limiter.limit()).isEqualTo(20);
+    }
+
+    @Test
+    void neverShrinksBelowMinimum() {
+        for (int i = 0; i < 50; i++) {
+            assertThatThrownBy(() -> limiter.execute(() -> {
+                throw new IOException("connection refused");
+            })).isInstanceOf(IOException.class);
+        }
+
+        assertThat(limiter.limit()).isEqualTo(2);
+    }
+
+    @Test
+    void rejectsCallsBeyondTheLimitWithoutQueueing() throws IOException {
+        limiter = limiter(1);
+
+        limiter.execute(() -> {
+            assertThatThrownBy(() -> limiter.execute(() -> "nested"))
+                    .isInstanceOf(SearchOverloadedException.class)
+                    .satisfies(e -> assertThat(((SearchOverloadedException) e).retryAfterSeconds()).isEqualTo(1));
+            return "outer";
+        });
+
+        assertThat(limiter.rejected()).isEqualTo(1);
+        assertThat(limiter.inFlight()).isZero();
+    }
+
+    static AdaptiveConcurrencyLimiter limiter(int initialLimit) {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        ReflectionTestUtils.setField(limiter, "initialLimit", initialLimit);
+        ReflectionTestUtils.setField(limiter, "minLimit", Math.min(2, initialLimit));
+        ReflectionTestUtils.setField(limiter, "maxLimit", 200);
+        ReflectionTestUtils.setField(limiter, "latencyThresholdMs", 1000L);
+        ReflectionTestUtils.setField(limiter, "backoffRatio", 0.9);
+        ReflectionTestUtils.setField(limiter, "retryAfterSeconds", 1L);
+        limiter.init();
+        return limiter;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.productsearch.service;
+
+import com.example.productsearch.model.Product;
+import com.example.productsearch.model.SearchCacheStats;
+import com.example.productsearch.model.SearchPage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CaffeineSearchResultCacheTest {
+
+    private static final long MAX_BYTES = 64 * 1024;
+
+    private final IndexGeneration generation = new IndexGeneration();
+
+    @Test
+    void entriesOfAnEarlierGenerationAreNotServed() {
+        CaffeineSearchResultCache cache = cache(Duration.ZERO);
+        SearchPage page = page(1);
+        cache.put(key("running shoes"), page);
+        assertThat(cache.<SearchPage>getIfPresent(key("running shoes"))).isEqualTo(page);
+
+        generation.bump();
+
+        assertThat(cache.<SearchPage>getIfPresent(key("running shoes"))).isNull();
+    }
+
+    @Test
+    void resultsComputedBeforeABumpAreNotStored() {
+        CaffeineSearchResultCache cache = cache(Duration.ZERO);
+        SearchCacheKey stale = key("running shoes");
+
+        generation.bump();
+        cache.put(stale, page(1));
+
+        assertThat(cache.<SearchPage>getIfPresent(stale)).isNull();
+        assertThat(cache.stats().entries()).isZero();
+    }
+
+    @Test
+    void resultsComputedInsideTheRefreshGraceAreNotStored() throws InterruptedException {
+        CaffeineSearchResultCache cache = cache(Duration.ofMillis(200));
+
+        generation.bump();
+        cache.put(key("running shoes"), page(1));
+        assertThat(cache.<SearchPage>getIfPresent(key("running shoes"))).isNull();
+
+        Thread.sleep(250);
+        cache.put(key("running shoes"), page(1));
+        assertThat(cache.<SearchPage>getIfPresent(key("running shoes"))).isNotNull();
+    }
+
+    @Test
+    void estimatedBytesStayWithinTheBound() throws InterruptedException {
+        CaffeineSearchResultCache cache = cache(Duration.ZERO);
+
+        for (int i = 0; i < 500; i++) {
+            cache.put(key("query " + i), page(10));
+        }
+
+        // Eviction runs as asynchronous maintenance; reads trigger it until the bound is met
+        long deadline = System.currentTimeMillis() + 5000;
+        SearchCacheStats stats = cache.stats();
+        while (stats.estimatedBytes() > MAX_BYTES && System.currentTimeMillis() < deadline) {
+            cache.getIfPresent(key("query 0"));
+            Thread.sleep(10);
+            stats = cache.stats();
+        }
+        assertThat(stats.estimatedBytes()).isBetween(1L, MAX_BYTES);
+        assertThat(stats.evictionCount()).isPositive();
+        assertThat(stats.entries()).isLessThan(500);
+    }
+
+    private CaffeineSearchResultCache cache(Duration refreshGrace) {
+        return new CaffeineSearchResultCache(generation, MAX_BYTES, Duration.ofMinutes(1), refreshGrace);
+    }
+
+    private SearchCacheKey key(String query) {
+        return SearchCacheKey.of("semantic", query, "size=10", generation.current());
+    }
+
+    private static SearchPage page(int products) {
+        List<Product> results = new ArrayList<>();
+        for (int i = 0; i < products; i++) {
+            results.add(new Product("id-" + i, "Product " + i, "A description of product " + i, "Sports", 10, null));
+        }
+        return new SearchPage(results, products, null, false, null);
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.ErrorResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InferenceCircuitBreakerTest {
+
+    private static final long OPEN_DURATION_MS = 50;
+
+    private InferenceCircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        breaker = new InferenceCircuitBreaker();
+        ReflectionTestUtils.setField(breaker, "windowSize", 4);
+        ReflectionTestUtils.setField(breaker, "failureRateThreshold", 0.5);
+        ReflectionTestUtils.setField(breaker, "slowCallMs", 1000L);
+        ReflectionTestUtils.setField(breaker, "openDurationMs", OPEN_DURATION_MS);
+        breaker.init();
+    }
+
+    @Test
+    void opensOnceFailureRateReachesThresholdOverFullWindow() {
+        breaker.onSuccess(0);
+        breaker.onFailure();
+        breaker.onFailure();
+        assertThat(breaker.state()).isEqualTo(InferenceCircuitBreaker.State.CLOSED);
+
+        breaker.onSuccess(0);
+
+        assertThat(breaker.state()).isEqualTo(InferenceCircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void slowCallsCountAsFailures() {
+        for (int i = 0; i < 4; i++) {
+            breaker.onSuccess(TimeUnit.SECONDS.toNanos(2));
+        }
+
+        assertThat(breaker.state()).isEqualTo(InferenceCircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void transportErrorsAndServerErrorsCountAsFailures() {
+        breaker.onError(new IOException("connection reset"));
+        breaker.onError(error(503));
+        breaker.onError(error(429));
+        breaker.onError(new IOException("read timed out"));
+
+        assertThat(breaker.state()).isEqualTo(InferenceCircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void badRequestsDoNotCount() {
+        for (int i = 0; i < 8; i++) {
+            breaker.onError(error(400));
+        }
+
+        assertThat(breaker.state()).isEqualTo(InferenceCircuitBreaker.State.CLOSED);
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void admitsSingleProbeAfterOpenDurationAndClosesOnSuccess() throws InterruptedException {
+        open();
+        Thread.sleep(OPEN_DURATION_MS + 10);
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.state()).isEqualTo(InferenceCircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+
+        breaker.onSuccess(0);
+
+        assertThat(breaker.state()).isEqualTo(InferenceCircuitBreaker.State.CLOSED);
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void failedProbeOpensAgain() throws InterruptedException {
+        open();
+        Thread.sleep(OPEN_DURATION_MS + 10);
+        assertThat(breaker.tryAcquire()).isTrue();
+
+        breaker.onError(new IOException("connection refused"));
+
+        assertThat(breaker.state()).isEqualTo(InferenceCircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void badRequestDuringProbeFreesTheProbeSlot() throws InterruptedException {
+        open();
+        Thread.sleep(OPEN_DURATION_MS + 10);
+        assertThat(breaker.tryAcquire()).isTrue();
+
+        breaker.onError(error(400));
+
+        assertThat(breaker.state()).isEqualTo(InferenceCircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure();
+        }
+        assertThat(breaker.state()).isEqualTo(InferenceCircuitBreaker.State.OPEN);
+    }
+
+    static ElasticsearchException error(int status) {
+        return new ElasticsearchException("search", ErrorResponse.of(r -> r
+                .status(status)
+                .error(e -> e.type("test_exception").reason("status " + status))
+        ));
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.MgetRequest;
+import co.elastic.clients.elasticsearch.core.MgetResponse;
+import co.elastic.clients.elasticsearch.core.mget.MultiGetResponseItem;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.ElasticsearchTransport;
+import com.example.productsearch.model.Product;
+import com.example.productsearch.model.ProductDocument;
+import com.example.productsearch.service.ProductChangeDetector.Action;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ProductChangeDetectorTest {
+
+    private static final Product STORED = new Product("1", "Trail Runner", "Lightweight running shoe", "Sports",
+            89.0, "/img/1.png");
+
+    private final ElasticsearchTransport transport = mock(ElasticsearchTransport.class);
+    private final Map<String, ProductDocument.Hashes> index = new HashMap<>();
+    private ProductChangeDetector detector;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(transport.jsonpMapper()).thenReturn(new JacksonJsonpMapper());
+        doAnswer(invocation -> hashes(invocation.getArgument(0)))
+                .when(transport).performRequest(any(), any(), any());
+        index.put(STORED.id(), ProductChangeDetector.hash(STORED));
+
+        detector = new ProductChangeDetector(new ElasticsearchClient(transport));
+        ReflectionTestUtils.setField(detector, "enabled", true);
+        ReflectionTestUtils.setField(detector, "cacheSize", 100L);
+        ReflectionTestUtils.setField(detector, "cacheTtlSeconds", 0L);
+        detector.init();
+    }
+
+    @Test
+    void unchangedProductIsSkipped() {
+        assertThat(action(STORED)).isEqualTo(Action.SKIP);
+    }
+
+    @Test
+    void changedFieldOutsideTheEmbeddingIsAPartialUpdate() {
+        Product repriced = new Product("1", "Trail Runner", "Lightweight running shoe", "Sports", 79.0, "/img/1.png");
+
+        assertThat(action(repriced)).isEqualTo(Action.UPDATE);
+    }
+
+    @Test
+    void changedDescriptionIsReindexed() {
+        Product rewritten = new Product("1", "Trail Runner", "Waterproof trail shoe", "Sports", 89.0, "/img/1.png");
+
+        assertThat(action(rewritten)).isEqualTo(Action.REINDEX);
+    }
+
+    @Test
+    void productMissingFromTheIndexIsCreated() {
+        Product added = new Product("2", "Yoga Mat", "Non-slip mat", "Sports", 25.0, null);
+
+        assertThat(action(added)).isEqualTo(Action.CREATE);
+    }
+
+    @Test
+    void failedLookupTreatsEveryProductAsNew() throws Exception {
+        doThrow(new IOException("connection reset")).when(transport).performRequest(any(), any(), any());
+
+        assertThat(action(STORED)).isEqualTo(Action.CREATE);
+    }
+
+    @Test
+    void oneLookupClassifiesTheWholeBatch() throws Exception {
+        Product rewritten = new Product("1", "Trail Runner", "Waterproof trail shoe", "Sports", 89.0, "/img/1.png");
+        Product added = new Product("2", "Yoga Mat", "Non-slip mat", "Sports", 25.0, null);
+
+        List<ProductChangeDetector.Change> changes = detector.classify(List.of(rewritten, added));
+
+        assertThat(changes).extracting(ProductChangeDetector.Change::action)
+                .containsExactly(Action.REINDEX, Action.CREATE);
+        verify(transport, times(1)).performRequest(any(MgetRequest.class), any(), any());
+    }
+
+    private Action action(Product product) {
+        return detector.classify(List.of(product)).get(0).action();
+    }
+
+    private MgetResponse<ProductDocument.Hashes> hashes(MgetRequest request) {
+        List<MultiGetResponseItem<ProductDocument.Hashes>> docs = new ArrayList<>();
+        for (String id : request.ids()) {
+            ProductDocument.Hashes stored = index.get(id);
+            docs.add(MultiGetResponseItem.of(d -> d.result(r -> {
+                r.index(IndexManager.WRITE_ALIAS).id(id).found(stored != null);
+                if (stored != null) {
+                    r.source(stored);
+                }
+                return r;
+            })));
+        }
+        return MgetResponse.of(m -> m.docs(docs));
+    }
+}
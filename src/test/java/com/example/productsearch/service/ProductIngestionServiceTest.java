@@ -0,0 +1,96 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.bulk.OperationType;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.ElasticsearchTransport;
+import com.example.productsearch.model.IngestionResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ProductIngestionServiceTest {
+
+    private final ElasticsearchTransport transport = mock(ElasticsearchTransport.class);
+    private final List<String> indexedIds = new CopyOnWriteArrayList<>();
+    private ProductIngestionService ingestion;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(transport.jsonpMapper()).thenReturn(new JacksonJsonpMapper());
+        doAnswer(invocation -> CompletableFuture.completedFuture(bulk(invocation.getArgument(0))))
+                .when(transport).performRequestAsync(any(), any(), any());
+        ElasticsearchClient client = new ElasticsearchClient(transport);
+
+        ProductChangeDetector changeDetector = new ProductChangeDetector(client);
+        ReflectionTestUtils.setField(changeDetector, "enabled", false);
+        changeDetector.init();
+
+        ingestion = new ProductIngestionService(client, new IndexGeneration(), changeDetector,
+                mock(SuggestionService.class));
+        ReflectionTestUtils.setField(ingestion, "maxOperations", 500);
+        ReflectionTestUtils.setField(ingestion, "maxSizeBytes", 5_242_880L);
+        ReflectionTestUtils.setField(ingestion, "maxConcurrentRequests", 1);
+        ReflectionTestUtils.setField(ingestion, "flushIntervalMs", 50L);
+        ReflectionTestUtils.setField(ingestion, "maxRetries", 3);
+        ReflectionTestUtils.setField(ingestion, "retryBackoffMs", 10L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ingestion.shutdown();
+    }
+
+    @Test
+    void malformedLineFailsOnItsOwnAndLaterLinesAreIngested() throws Exception {
+        String body = """
+                {"id":"1","name":"Trail Runner","description":"Light shoe","category":"Sports","price":89.0}
+                {"id":"2","name":"Broken","price":
+                {"id":"3","name":"Yoga Mat","description":"Non-slip","category":"Sports","price":"cheap"}
+
+                {"id":"4","name":"Water Bottle","description":"Steel","category":"Outdoor","price":19.5}
+                """;
+
+        IngestionResult result = ingestion.ingestNdjson(
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(indexedIds).containsExactly("1", "4");
+        assertThat(result.submitted()).isEqualTo(2);
+        assertThat(result.created()).isEqualTo(2);
+        assertThat(result.failed()).isEqualTo(2);
+        assertThat(result.errors()).satisfiesExactly(
+                error -> assertThat(error).startsWith("Line 2: "),
+                error -> assertThat(error).startsWith("Line 3: "));
+    }
+
+    private BulkResponse bulk(BulkRequest request) {
+        List<BulkResponseItem> items = new ArrayList<>();
+        for (BulkOperation operation : request.operations()) {
+            String id = operation.index().id();
+            indexedIds.add(id);
+            items.add(BulkResponseItem.of(i -> i
+                    .operationType(OperationType.Index)
+                    .index(IndexManager.WRITE_ALIAS)
+                    .id(id)
+                    .status(201)
+                    .result("created")));
+        }
+        return BulkResponse.of(b -> b.errors(false).took(1).items(items));
+    }
+}
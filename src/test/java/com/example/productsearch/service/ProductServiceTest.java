@@ -0,0 +1,333 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.ErrorResponse;
+import co.elastic.clients.elasticsearch.core.ClosePointInTimeRequest;
+import co.elastic.clients.elasticsearch.core.ClosePointInTimeResponse;
+import co.elastic.clients.elasticsearch.core.MsearchRequest;
+import co.elastic.clients.elasticsearch.core.MsearchResponse;
+import co.elastic.clients.elasticsearch.core.OpenPointInTimeRequest;
+import co.elastic.clients.elasticsearch.core.OpenPointInTimeResponse;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.msearch.MultiSearchResponseItem;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.ElasticsearchTransport;
+import co.elastic.clients.transport.rest5_client.low_level.Request;
+import co.elastic.clients.transport.rest5_client.low_level.Response;
+import co.elastic.clients.transport.rest5_client.low_level.Rest5Client;
+import com.example.productsearch.model.Product;
+import com.example.productsearch.model.RrfOptions;
+import com.example.productsearch.model.RrfSearchResponse;
+import com.example.productsearch.model.SearchExplanation;
+import com.example.productsearch.model.SearchFilters;
+import com.example.productsearch.model.SearchPage;
+import com.example.productsearch.model.SearchPageRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ProductServiceTest {
+
+    private static final RrfOptions DEFAULT_RRF = new RrfOptions(null, null, null, null, null);
+    private static final SearchFilters FILTERS = new SearchFilters(List.of("Footwear", "Sports"), 20.0, 150.0);
+    private static final String FACETED_RESPONSE = """
+            {"took":1,"timed_out":false,"_shards":{"total":1,"successful":1,"failed":0},
+             "hits":{"total":{"value":0,"relation":"eq"},"hits":[]},
+             "aggregations":{
+               "filter#categories":{"doc_count":0,"sterms#buckets":{"buckets":[]}},
+               "filter#prices":{"doc_count":0,"histogram#buckets":{"buckets":[]}}}}
+            """;
+
+    private final ElasticsearchTransport transport = mock(ElasticsearchTransport.class);
+    private final ElasticsearchAsyncClient asyncClient = mock(ElasticsearchAsyncClient.class);
+    private final Rest5Client restClient = mock(Rest5Client.class);
+    private final ElserInferenceService inferenceService = mock(ElserInferenceService.class);
+    private final List<Object> requests = new CopyOnWriteArrayList<>();
+    private final List<Request> lowLevelRequests = new CopyOnWriteArrayList<>();
+    private boolean pitUnavailable;
+    private InferenceCircuitBreaker breaker;
+    private ProductService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(transport.jsonpMapper()).thenReturn(new JacksonJsonpMapper());
+        doAnswer(invocation -> respond(invocation.getArgument(0)))
+                .when(transport).performRequest(any(), any(), any());
+        doAnswer(invocation -> {
+            lowLevelRequests.add(invocation.getArgument(0));
+            Response response = mock(Response.class);
+            when(response.getEntity()).thenReturn(new StringEntity(FACETED_RESPONSE, ContentType.APPLICATION_JSON));
+            return response;
+        }).when(restClient).performRequest(any(Request.class));
+
+        IndexGeneration generation = new IndexGeneration();
+        SearchResultCache cache = new CaffeineSearchResultCache(generation, 1_000_000, Duration.ofMinutes(1),
+                Duration.ZERO);
+        SearchCoalescer coalescer = new SearchCoalescer();
+        ReflectionTestUtils.setField(coalescer, "maxWaitMs", 1000L);
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        ReflectionTestUtils.setField(limiter, "initialLimit", 10);
+        ReflectionTestUtils.setField(limiter, "minLimit", 1);
+        ReflectionTestUtils.setField(limiter, "maxLimit", 10);
+        ReflectionTestUtils.setField(limiter, "latencyThresholdMs", 1000L);
+        ReflectionTestUtils.setField(limiter, "backoffRatio", 0.9);
+        ReflectionTestUtils.setField(limiter, "retryAfterSeconds", 1L);
+        limiter.init();
+
+        breaker = new InferenceCircuitBreaker();
+        ReflectionTestUtils.setField(breaker, "windowSize", 2);
+        ReflectionTestUtils.setField(breaker, "failureRateThreshold", 0.5);
+        ReflectionTestUtils.setField(breaker, "slowCallMs", 1000L);
+        ReflectionTestUtils.setField(breaker, "openDurationMs", 60_000L);
+        breaker.init();
+
+        service = new ProductService(new ElasticsearchClient(transport), asyncClient, restClient, inferenceService,
+                cache, coalescer, generation, new SearchMetrics(new SimpleMeterRegistry()), limiter, breaker,
+                mock(ProductChangeDetector.class), mock(SuggestionService.class));
+        ReflectionTestUtils.setField(service, "defaultPageSize", 10);
+        ReflectionTestUtils.setField(service, "maxPageSize", 100);
+        ReflectionTestUtils.setField(service, "pitKeepAlive", "1m");
+        ReflectionTestUtils.setField(service, "sourceIncludes", List.of("id", "name", "category", "price"));
+        ReflectionTestUtils.setField(service, "facetCategorySize", 20);
+        ReflectionTestUtils.setField(service, "facetPriceInterval", 50.0);
+        ReflectionTestUtils.setField(service, "explainDeadlineMs", 1000L);
+        ReflectionTestUtils.setField(service, "rrfK", 60);
+        ReflectionTestUtils.setField(service, "rrfWindowSize", 50);
+        ReflectionTestUtils.setField(service, "rrfSemanticWeight", 1.0);
+        ReflectionTestUtils.setField(service, "rrfLexicalWeight", 1.0);
+        ReflectionTestUtils.setField(service, "rrfSize", 10);
+        ReflectionTestUtils.setField(service, "maxRrfWindowSize", 100);
+    }
+
+    @Test
+    void rrfSendsBothLegsWhileTheBreakerIsClosed() throws Exception {
+        RrfSearchResponse response = service.rrfSearch("running shoes", DEFAULT_RRF);
+
+        assertThat(response.degraded()).isFalse();
+        assertThat(msearch().searches()).hasSize(2);
+        assertThat(breaker.state()).isEqualTo(InferenceCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void rrfRunsOnlyTheLexicalLegWhileTheBreakerIsOpen() throws Exception {
+        openBreaker();
+
+        RrfSearchResponse response = service.rrfSearch("running shoes", DEFAULT_RRF);
+
+        assertThat(response.degraded()).isTrue();
+        assertThat(response.results()).extracting(r -> r.product().id()).containsExactly("lexical-1");
+        assertThat(msearch().searches()).singleElement()
+                .satisfies(item -> assertThat(item.body().query().isMultiMatch()).isTrue());
+    }
+
+    @Test
+    void rrfRejectsOutOfRangeOptions() {
+        List<RrfOptions> invalid = List.of(
+                new RrfOptions(0, null, null, null, null),
+                new RrfOptions(-1, null, null, null, null),
+                new RrfOptions(null, 0, null, null, null),
+                new RrfOptions(null, null, -0.5, null, null),
+                new RrfOptions(null, null, null, Double.NaN, null),
+                new RrfOptions(null, null, null, Double.POSITIVE_INFINITY, null),
+                new RrfOptions(null, null, null, null, 0)
+        );
+
+        for (RrfOptions options : invalid) {
+            assertThatThrownBy(() -> service.rrfSearch("running shoes", options))
+                    .as("%s", options)
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+        assertThat(requests).isEmpty();
+    }
+
+    @Test
+    void rrfCapsTheWindowAtTheConfiguredMaximum() throws Exception {
+        service.rrfSearch("running shoes", new RrfOptions(null, 50_000, null, null, 500));
+
+        assertThat(msearch().searches()).allSatisfy(item -> assertThat(item.body().size()).isEqualTo(100));
+    }
+
+    @Test
+    void explainReturnsLexicalHitsWithoutInferenceWhileTheBreakerIsOpen() throws Exception {
+        openBreaker();
+
+        SearchExplanation explanation = service.explainSearch("running shoes");
+
+        assertThat(explanation.degraded()).isTrue();
+        assertThat(explanation.queryTokens()).isEmpty();
+        assertThat(explanation.results()).hasSize(1);
+        verifyNoInteractions(inferenceService, asyncClient);
+    }
+
+    @Test
+    void filtersGoIntoTheQueryOnUnfacetedPages() throws Exception {
+        service.semanticSearch("running shoes", new SearchPageRequest(10, null, false, null, FILTERS, false));
+
+        JsonNode body = lastSearchBody();
+        JsonNode filter = body.path("query").path("bool").path("filter");
+        assertThat(body.path("query").path("bool").path("must").get(0).has("semantic")).isTrue();
+        assertThat(filter.get(0).path("terms").path("category")).extracting(JsonNode::asText)
+                .containsExactly("Footwear", "Sports");
+        assertPriceRange(filter.get(1));
+        assertThat(body.has("post_filter")).isFalse();
+        assertThat(body.has("aggregations")).isFalse();
+    }
+
+    @Test
+    void facetsCountEachFacetWithoutItsOwnFilter() throws Exception {
+        SearchPage page = service.semanticSearch("running shoes",
+                new SearchPageRequest(10, null, false, null, FILTERS, true));
+
+        JsonNode body = lastSearchBody();
+        assertThat(body.path("query").has("semantic")).isTrue();
+        JsonNode postFilter = body.path("post_filter").path("bool").path("filter");
+        assertThat(postFilter).hasSize(2);
+        assertThat(postFilter.get(0).has("terms")).isTrue();
+        assertPriceRange(postFilter.get(1));
+
+        JsonNode categories = body.path("aggregations").path("categories");
+        assertPriceRange(categories.path("filter").path("bool").path("filter").get(0));
+        assertThat(categories.path("aggregations").path("buckets").path("terms").path("field").asText())
+                .isEqualTo("category");
+        JsonNode prices = body.path("aggregations").path("prices");
+        assertThat(prices.path("filter").path("bool").path("filter").get(0).has("terms")).isTrue();
+        assertThat(prices.path("aggregations").path("buckets").path("histogram").path("interval").asDouble())
+                .isEqualTo(50.0);
+        assertThat(page.facets()).isNotNull();
+    }
+
+    @Test
+    void malformedCursorDoesNotTakeTheHalfOpenProbe() throws Exception {
+        halfOpenBreaker();
+        SearchPageRequest page = new SearchPageRequest(10, "not-a-cursor", false, null, SearchFilters.NONE, false);
+
+        assertThatThrownBy(() -> service.semanticSearch("running shoes", page))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void failedPointInTimeDoesNotTakeTheHalfOpenProbe() throws Exception {
+        halfOpenBreaker();
+        pitUnavailable = true;
+
+        assertThatThrownBy(() -> service.semanticSearch("running shoes", paginated()))
+                .isInstanceOf(ElasticsearchException.class);
+
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void pointInTimeIsClosedWhenTheBreakerShedsTheFirstPage() throws Exception {
+        openBreaker();
+
+        assertThatThrownBy(() -> service.semanticSearch("running shoes", paginated()))
+                .isInstanceOf(SearchOverloadedException.class);
+
+        assertThat(requests).hasAtLeastOneElementOfType(ClosePointInTimeRequest.class);
+    }
+
+    /**
+     * The price range is {@code [minPrice, maxPrice)} to match the price facet's buckets.
+     */
+    private static void assertPriceRange(JsonNode clause) {
+        JsonNode price = clause.path("range").path("price");
+        assertThat(price.path("gte").asDouble()).isEqualTo(20.0);
+        assertThat(price.path("lt").asDouble()).isEqualTo(150.0);
+        assertThat(price.has("lte")).isFalse();
+    }
+
+    private JsonNode lastSearchBody() throws Exception {
+        Request request = lowLevelRequests.get(lowLevelRequests.size() - 1);
+        return new ObjectMapper().readTree(
+                new String(request.getEntity().getContent().readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    private static SearchPageRequest paginated() {
+        return new SearchPageRequest(10, null, true, null, SearchFilters.NONE, false);
+    }
+
+    private void halfOpenBreaker() throws InterruptedException {
+        ReflectionTestUtils.setField(breaker, "openDurationMs", 300L);
+        openBreaker();
+        Thread.sleep(350);
+    }
+
+    private void openBreaker() {
+        breaker.onFailure();
+        breaker.onFailure();
+        assertThat(breaker.state()).isEqualTo(InferenceCircuitBreaker.State.OPEN);
+    }
+
+    private MsearchRequest msearch() {
+        return requests.stream()
+                .filter(MsearchRequest.class::isInstance)
+                .map(MsearchRequest.class::cast)
+                .reduce((first, second) -> second)
+                .orElseThrow();
+    }
+
+    private Object respond(Object request) {
+        requests.add(request);
+        if (request instanceof MsearchRequest msearch) {
+            List<MultiSearchResponseItem<Product>> items = new ArrayList<>();
+            for (var search : msearch.searches()) {
+                String leg = search.body().query().isMultiMatch() ? "lexical" : "semantic";
+                items.add(MultiSearchResponseItem.<Product>of(i -> i.result(r -> r
+                        .took(1)
+                        .timedOut(false)
+                        .shards(sh -> sh.total(1).successful(1).failed(0))
+                        .hits(h -> h.hits(List.of(hit(leg + "-1"))))
+                )));
+            }
+            return MsearchResponse.<Product>of(m -> m.took(1).responses(items));
+        }
+        if (request instanceof OpenPointInTimeRequest) {
+            if (pitUnavailable) {
+                throw new ElasticsearchException("open_point_in_time", ErrorResponse.of(e -> e
+                        .status(400)
+                        .error(c -> c.type("index_closed_exception").reason("closed"))));
+            }
+            return OpenPointInTimeResponse.of(p -> p.id("pit-1").shards(sh -> sh.total(1).successful(1).failed(0)));
+        }
+        if (request instanceof ClosePointInTimeRequest) {
+            return ClosePointInTimeResponse.of(c -> c.succeeded(true).numFreed(1));
+        }
+        if (request instanceof SearchRequest) {
+            return SearchResponse.<Product>of(r -> r
+                    .took(1)
+                    .timedOut(false)
+                    .shards(sh -> sh.total(1).successful(1).failed(0))
+                    .hits(h -> h.hits(List.of(hit("lexical-1"))))
+            );
+        }
+        throw new IllegalArgumentException("Unexpected request " + request.getClass().getSimpleName());
+    }
+
+    private static Hit<Product> hit(String id) {
+        Product product = new Product(id, "Product " + id, "A product", "Sports", 10, null);
+        return Hit.of(h -> h.index(ProductService.INDEX_NAME).id(id).score(1.0).source(product));
+    }
+}
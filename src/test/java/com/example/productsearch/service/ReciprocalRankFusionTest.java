@@ -0,0 +1,76 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.example.productsearch.model.FusedResult;
+import com.example.productsearch.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ReciprocalRankFusionTest {
+
+    private static final int K = 60;
+
+    @Test
+    void documentsFoundByBothLegsRankFirst() {
+        List<FusedResult> fused = ReciprocalRankFusion.fuse(
+                List.of(hit("a", 9.0), hit("b", 8.0)),
+                List.of(hit("c", 3.0), hit("b", 2.0)),
+                K, 1.0, 1.0, 10);
+
+        assertThat(fused).extracting(r -> r.product().id()).containsExactly("b", "a", "c");
+        FusedResult both = fused.get(0);
+        assertThat(both.score()).isCloseTo(1.0 / (K + 2) + 1.0 / (K + 2), within(1e-12));
+        assertThat(both.semanticRank()).isEqualTo(2);
+        assertThat(both.semanticScore()).isEqualTo(8.0);
+        assertThat(both.lexicalRank()).isEqualTo(2);
+        assertThat(both.lexicalScore()).isEqualTo(2.0);
+    }
+
+    @Test
+    void singleLegDocumentsCarryNoRankForTheOtherLeg() {
+        List<FusedResult> fused = ReciprocalRankFusion.fuse(
+                List.of(hit("a", 9.0)), List.of(hit("c", 3.0)), K, 1.0, 1.0, 10);
+
+        FusedResult semanticOnly = fused.stream().filter(r -> r.product().id().equals("a")).findFirst().orElseThrow();
+        assertThat(semanticOnly.semanticRank()).isEqualTo(1);
+        assertThat(semanticOnly.lexicalRank()).isNull();
+        assertThat(semanticOnly.lexicalScore()).isNull();
+    }
+
+    @Test
+    void weightsShiftTheOrderBetweenLegs() {
+        List<FusedResult> fused = ReciprocalRankFusion.fuse(
+                List.of(hit("a", 9.0)), List.of(hit("c", 3.0)), K, 1.0, 2.0, 10);
+
+        assertThat(fused).extracting(r -> r.product().id()).containsExactly("c", "a");
+        assertThat(fused.get(0).score()).isCloseTo(2.0 / (K + 1), within(1e-12));
+    }
+
+    @Test
+    void truncatesToSize() {
+        List<FusedResult> fused = ReciprocalRankFusion.fuse(
+                List.of(hit("a", 3.0), hit("b", 2.0), hit("c", 1.0)), List.of(), K, 1.0, 1.0, 2);
+
+        assertThat(fused).extracting(r -> r.product().id()).containsExactly("a", "b");
+    }
+
+    @Test
+    void hitsWithoutSourceAreSkippedWithoutTakingARank() {
+        Hit<Product> noSource = Hit.of(h -> h.index(ProductService.INDEX_NAME).id("x").score(5.0));
+
+        List<FusedResult> fused = ReciprocalRankFusion.fuse(
+                List.of(noSource, hit("a", 4.0)), List.of(), K, 1.0, 1.0, 10);
+
+        assertThat(fused).extracting(r -> r.product().id()).containsExactly("a");
+        assertThat(fused.get(0).semanticRank()).isEqualTo(1);
+    }
+
+    private static Hit<Product> hit(String id, double score) {
+        Product product = new Product(id, "Product " + id, null, "Sports", 10, null);
+        return Hit.of(h -> h.index(ProductService.INDEX_NAME).id(id).score(score).source(product));
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.ClearScrollRequest;
+import co.elastic.clients.elasticsearch.core.ClearScrollResponse;
+import co.elastic.clients.elasticsearch.core.CountRequest;
+import co.elastic.clients.elasticsearch.core.CountResponse;
+import co.elastic.clients.elasticsearch.core.MgetRequest;
+import co.elastic.clients.elasticsearch.core.MgetResponse;
+import co.elastic.clients.elasticsearch.core.ScrollRequest;
+import co.elastic.clients.elasticsearch.core.ScrollResponse;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.bulk.OperationType;
+import co.elastic.clients.elasticsearch.core.mget.MultiGetResponseItem;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.indices.ForcemergeRequest;
+import co.elastic.clients.elasticsearch.indices.ForcemergeResponse;
+import co.elastic.clients.elasticsearch.indices.GetIndicesSettingsRequest;
+import co.elastic.clients.elasticsearch.indices.GetIndicesSettingsResponse;
+import co.elastic.clients.elasticsearch.indices.PutIndicesSettingsRequest;
+import co.elastic.clients.elasticsearch.indices.PutIndicesSettingsResponse;
+import co.elastic.clients.elasticsearch.indices.RefreshRequest;
+import co.elastic.clients.elasticsearch.indices.RefreshResponse;
+import co.elastic.clients.json.JsonData;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.ElasticsearchTransport;
+import com.example.productsearch.model.ProductDocument;
+import com.example.productsearch.model.ReindexStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ReindexServiceTest {
+
+    private static final String SOURCE = "products-v1";
+    private static final String TARGET = "products-v2";
+
+    private final ElasticsearchTransport transport = mock(ElasticsearchTransport.class);
+    private final IndexManager indexManager = mock(IndexManager.class);
+    private final List<BulkOperation> replayed = new CopyOnWriteArrayList<>();
+    private final AtomicInteger bulkCalls = new AtomicInteger();
+    private List<Hit<JsonData>> sourceDocuments = List.of();
+    private List<Hit<ProductDocument>> writtenDuringCopy = List.of();
+    private Map<String, Long> targetWriteTimes = Map.of();
+    private boolean rejectFirstBulkItem;
+    private ReindexService reindex;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(transport.jsonpMapper()).thenReturn(new JacksonJsonpMapper());
+        doAnswer(invocation -> respond(invocation.getArgument(0)))
+                .when(transport).performRequest(any(), any(), any());
+        doAnswer(invocation -> CompletableFuture.completedFuture(bulk(invocation.getArgument(0))))
+                .when(transport).performRequestAsync(any(), any(), any());
+        when(indexManager.readIndex()).thenReturn(SOURCE);
+        when(indexManager.writeIndex()).thenReturn(SOURCE);
+        when(indexManager.createNextVersion()).thenReturn(TARGET);
+
+        reindex = new ReindexService(new ElasticsearchClient(transport), indexManager, new IndexGeneration());
+        ReflectionTestUtils.setField(reindex, "slices", 1);
+        ReflectionTestUtils.setField(reindex, "batchSize", 500);
+        ReflectionTestUtils.setField(reindex, "scrollKeepAlive", "1m");
+        ReflectionTestUtils.setField(reindex, "maxConcurrentRequests", 1);
+        ReflectionTestUtils.setField(reindex, "maxSegments", 1L);
+        ReflectionTestUtils.setField(reindex, "maxRetries", 3);
+        ReflectionTestUtils.setField(reindex, "retryBackoffMs", 50L);
+        ReflectionTestUtils.setField(reindex, "flushIntervalMs", 50L);
+        ReflectionTestUtils.setField(reindex, "catchUpMarginMs", 0L);
+    }
+
+    @Test
+    void retriesReAddedAfterTheLastFlushAreStillSent() throws Exception {
+        sourceDocuments = List.of(sourceHit("a"), sourceHit("b"));
+        rejectFirstBulkItem = true;
+
+        ReindexStatus status = run();
+
+        assertThat(status.phase()).isEqualTo("DONE");
+        assertThat(status.copied()).isEqualTo(2);
+        assertThat(status.retried()).isEqualTo(1);
+        assertThat(bulkCalls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void writesStayOnTheSourceUntilTheCopyIsDone() throws Exception {
+        sourceDocuments = List.of(sourceHit("a"));
+
+        ReindexStatus status = run();
+
+        assertThat(status.phase()).isEqualTo("DONE");
+        InOrder order = inOrder(transport, indexManager);
+        order.verify(transport).performRequestAsync(any(BulkRequest.class), any(), any());
+        order.verify(indexManager).moveWriteAlias(SOURCE, TARGET);
+        order.verify(indexManager).swapReadAlias(SOURCE, TARGET);
+    }
+
+    @Test
+    void replaysWritesMadeDuringTheCopyUnlessTheTargetIsNewer() throws Exception {
+        sourceDocuments = List.of(sourceHit("a"), sourceHit("b"));
+        writtenDuringCopy = List.of(written("a", 2000L), written("b", 2000L), written("c", 2000L));
+        // a was copied before its update, b was written to the target after the alias moved
+        targetWriteTimes = Map.of("a", 1000L, "b", 3000L);
+
+        ReindexStatus status = run();
+
+        assertThat(status.phase()).isEqualTo("DONE");
+        assertThat(status.caughtUp()).isEqualTo(2);
+        assertThat(replayed).hasSize(2);
+        assertThat(replayed.get(0).isIndex()).isTrue();
+        assertThat(replayed.get(0).index().id()).isEqualTo("a");
+        assertThat(replayed.get(0).index().ifSeqNo()).isEqualTo(7L);
+        assertThat(replayed.get(1).isCreate()).isTrue();
+        assertThat(replayed.get(1).create().id()).isEqualTo("c");
+    }
+
+    private ReindexStatus run() throws InterruptedException {
+        reindex.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        ReindexStatus status = reindex.status();
+        while (!status.phase().equals("DONE") && !status.phase().equals("FAILED")) {
+            assertThat(System.currentTimeMillis()).as("reindex stuck in %s", status.phase()).isLessThan(deadline);
+            Thread.sleep(10);
+            status = reindex.status();
+        }
+        return status;
+    }
+
+    private Object respond(Object request) {
+        if (request instanceof GetIndicesSettingsRequest) {
+            return GetIndicesSettingsResponse.of(r -> r.settings(SOURCE, st -> st
+                    .settings(s -> s.numberOfReplicas("1").refreshInterval(t -> t.time("1s")))));
+        }
+        if (request instanceof RefreshRequest) {
+            return RefreshResponse.of(r -> r.shards(sh -> sh.total(1).successful(1).failed(0)));
+        }
+        if (request instanceof CountRequest) {
+            return CountResponse.of(c -> c.count(sourceDocuments.size())
+                    .shards(sh -> sh.total(1).successful(1).failed(0)));
+        }
+        if (request instanceof SearchRequest search) {
+            // The copy scrolls everything, the catch-up only what was written since the job started
+            return search.query() == null ? searchResponse(sourceDocuments) : searchResponse(writtenDuringCopy);
+        }
+        if (request instanceof ScrollRequest) {
+            return ScrollResponse.of(r -> r
+                    .took(1)
+                    .timedOut(false)
+                    .shards(sh -> sh.total(1).successful(1).failed(0))
+                    .hits(h -> h.hits(List.of()))
+            );
+        }
+        if (request instanceof ClearScrollRequest) {
+            return ClearScrollResponse.of(c -> c.succeeded(true).numFreed(1));
+        }
+        if (request instanceof PutIndicesSettingsRequest) {
+            return PutIndicesSettingsResponse.of(p -> p.acknowledged(true));
+        }
+        if (request instanceof ForcemergeRequest) {
+            return ForcemergeResponse.of(f -> f.shards(sh -> sh.total(1).successful(1).failed(0)));
+        }
+        if (request instanceof MgetRequest mget) {
+            return writeTimes(mget.ids());
+        }
+        if (request instanceof BulkRequest bulk) {
+            replayed.addAll(bulk.operations());
+            return bulkResponse(bulk, false);
+        }
+        throw new IllegalArgumentException("Unexpected request " + request.getClass().getSimpleName());
+    }
+
+    private BulkResponse bulk(BulkRequest request) {
+        boolean first = bulkCalls.getAndIncrement() == 0;
+        return bulkResponse(request, rejectFirstBulkItem && first);
+    }
+
+    private static BulkResponse bulkResponse(BulkRequest request, boolean rejectFirst) {
+        List<BulkResponseItem> items = new ArrayList<>();
+        for (BulkOperation operation : request.operations()) {
+            String id = operation.isCreate() ? operation.create().id() : operation.index().id();
+            boolean reject = rejectFirst && items.isEmpty();
+            items.add(BulkResponseItem.of(i -> {
+                i.operationType(operation.isCreate() ? OperationType.Create : OperationType.Index)
+                        .index(TARGET)
+                        .id(id);
+                return reject
+                        ? i.status(429).error(e -> e.type("es_rejected_execution_exception").reason("queue full"))
+                        : i.status(201).result("created");
+            }));
+        }
+        return BulkResponse.of(b -> b.errors(rejectFirst).took(1).items(items));
+    }
+
+    private MgetResponse<ProductDocument.WriteTime> writeTimes(List<String> ids) {
+        List<MultiGetResponseItem<ProductDocument.WriteTime>> docs = new ArrayList<>();
+        for (String id : ids) {
+            Long indexedAt = targetWriteTimes.get(id);
+            docs.add(MultiGetResponseItem.of(d -> d.result(r -> {
+                r.index(TARGET).id(id).found(indexedAt != null);
+                if (indexedAt != null) {
+                    r.seqNo(7L).primaryTerm(1L).source(new ProductDocument.WriteTime(indexedAt));
+                }
+                return r;
+            })));
+        }
+        return MgetResponse.of(m -> m.docs(docs));
+    }
+
+    private static <T> SearchResponse<T> searchResponse(List<Hit<T>> hits) {
+        return SearchResponse.of(r -> r
+                .took(1)
+                .timedOut(false)
+                .scrollId("scroll")
+                .shards(sh -> sh.total(1).successful(1).failed(0))
+                .hits(h -> h.hits(hits))
+        );
+    }
+
+    private static Hit<JsonData> sourceHit(String id) {
+        return Hit.of(h -> h.index(SOURCE).id(id).source(JsonData.of(Map.of("id", id))));
+    }
+
+    private static Hit<ProductDocument> written(String id, long indexedAt) {
+        ProductDocument document = new ProductDocument(id, "Product " + id, null, "Sports", 10, null,
+                "content", "doc", indexedAt);
+        return Hit.of(h -> h.index(SOURCE).id(id).source(document));
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.productsearch.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SearchCoalescerTest {
+
+    private static final SearchCacheKey KEY = SearchCacheKey.of("semantic", "running shoes", "size=10", 0);
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final CountDownLatch leaderStarted = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private SearchCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        coalescer = new SearchCoalescer();
+        ReflectionTestUtils.setField(coalescer, "maxWaitMs", 2000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void waitersShareTheLeadersResult() throws Exception {
+        Future<String> leader = lead(() -> "result");
+
+        String waited = coalescer.execute(KEY, () -> "own");
+
+        assertThat(waited).isEqualTo("result");
+        assertThat(leader.get()).isEqualTo("result");
+        assertThat(coalescer.stats().coalesced()).isEqualTo(1);
+    }
+
+    @Test
+    void waitersGetTheLeadersUncheckedExceptionUnchanged() throws Exception {
+        IllegalArgumentException failure = new IllegalArgumentException("size must be at least 1");
+        lead(() -> {
+            throw failure;
+        });
+
+        assertThatThrownBy(() -> coalescer.execute(KEY, () -> "own")).isSameAs(failure);
+    }
+
+    @Test
+    void waitersGetOverloadWithItsRetryAfter() throws Exception {
+        lead(() -> {
+            throw new SearchOverloadedException("Search is overloaded", 3);
+        });
+
+        assertThatThrownBy(() -> coalescer.execute(KEY, () -> "own"))
+                .isInstanceOfSatisfying(SearchOverloadedException.class,
+                        e -> assertThat(e.retryAfterSeconds()).isEqualTo(3));
+    }
+
+    @Test
+    void waitersGetTheLeadersIoFailureAsCause() throws Exception {
+        IOException failure = new IOException("connection reset");
+        lead(() -> {
+            throw failure;
+        });
+
+        assertThatThrownBy(() -> coalescer.execute(KEY, () -> "own"))
+                .isInstanceOf(IOException.class)
+                .hasCause(failure);
+    }
+
+    @Test
+    void waitersGiveUpAfterMaxWait() throws Exception {
+        ReflectionTestUtils.setField(coalescer, "maxWaitMs", 50L);
+        Future<String> leader = lead(() -> {
+            try {
+                release.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "late";
+        });
+
+        assertThatThrownBy(() -> coalescer.execute(KEY, () -> "own"))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Timed out after 50 ms");
+        assertThat(coalescer.stats().timeouts()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(leader.get(1, TimeUnit.SECONDS)).isEqualTo("late");
+    }
+
+    /**
+     * Starts a leader for {@link #KEY} that runs {@code call} only once a waiter has joined it.
+     */
+    private Future<String> lead(SearchCoalescer.Call<String> call) throws InterruptedException {
+        Future<String> leader = executor.submit(() -> coalescer.execute(KEY, () -> {
+            leaderStarted.countDown();
+            awaitWaiter();
+            return call.call();
+        }));
+        assertThat(leaderStarted.await(1, TimeUnit.SECONDS)).isTrue();
+        return leader;
+    }
+
+    private void awaitWaiter() throws IOException {
+        try {
+            while (coalescer.stats().coalesced() == 0) {
+                Thread.sleep(1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a waiter", e);
+        }
+    }
+}
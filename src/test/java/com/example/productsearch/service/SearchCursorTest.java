@@ -0,0 +1,76 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SearchCursorTest {
+
+    @Test
+    void roundTripsPitIdAndSortValues() {
+        SearchCursor cursor = new SearchCursor("pit-id==", List.of(
+                FieldValue.of(12.5),
+                FieldValue.of(4711L),
+                FieldValue.of("Footwear"),
+                FieldValue.of(true),
+                FieldValue.NULL
+        ));
+
+        SearchCursor decoded = SearchCursor.decode(cursor.encode());
+
+        assertThat(decoded.pitId()).isEqualTo("pit-id==");
+        assertThat(decoded.searchAfter()).hasSize(5);
+        assertThat(decoded.searchAfter().get(0).doubleValue()).isEqualTo(12.5);
+        assertThat(decoded.searchAfter().get(1).longValue()).isEqualTo(4711L);
+        assertThat(decoded.searchAfter().get(2).stringValue()).isEqualTo("Footwear");
+        assertThat(decoded.searchAfter().get(3).booleanValue()).isTrue();
+        assertThat(decoded.searchAfter().get(4).isNull()).isTrue();
+    }
+
+    @Test
+    void roundTripsFirstPageWithoutSortValues() {
+        SearchCursor decoded = SearchCursor.decode(new SearchCursor("pit", List.of()).encode());
+
+        assertThat(decoded.pitId()).isEqualTo("pit");
+        assertThat(decoded.searchAfter()).isEmpty();
+    }
+
+    @Test
+    void encodesAsUrlSafeBase64WithoutPadding() {
+        String encoded = new SearchCursor("a?b/c+d", List.of(FieldValue.of("~~~"))).encode();
+
+        assertThat(encoded).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void rejectsInvalidBase64() {
+        assertThatThrownBy(() -> SearchCursor.decode("not base64!"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Malformed search cursor");
+    }
+
+    @Test
+    void rejectsInvalidJson() {
+        assertThatThrownBy(() -> SearchCursor.decode(encode("{\"pit\":")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Malformed search cursor");
+    }
+
+    @Test
+    void rejectsCursorWithoutPitOrSortValues() {
+        assertThatThrownBy(() -> SearchCursor.decode(encode("{\"after\":[]}")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SearchCursor.decode(encode("{\"pit\":\"p\",\"after\":1}")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.transport.rest5_client.low_level.Rest5Client;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class SearchStreamServiceTest {
+
+    private final Rest5Client restClient = mock(Rest5Client.class);
+    private final InferenceCircuitBreaker breaker = mock(InferenceCircuitBreaker.class);
+    private final SearchStreamService streams = new SearchStreamService(mock(ElasticsearchClient.class), restClient,
+            mock(SearchMetrics.class), mock(AdaptiveConcurrencyLimiter.class), breaker);
+
+    @Test
+    void unknownModeIsRejectedBeforeAnythingIsSent() {
+        assertThatThrownBy(() -> streams.streamSearch("lexical", "running shoes", 100))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unknown mode 'lexical'");
+
+        verifyNoInteractions(restClient, breaker);
+    }
+
+    @Test
+    void sizeBelowOneIsRejected() {
+        assertThatThrownBy(() -> streams.streamSearch("semantic", "running shoes", 0))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        verifyNoInteractions(restClient, breaker);
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.productsearch.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.util.ObjectBuilder;
+import com.example.productsearch.model.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class SuggestionServiceTest {
+
+    private final ElasticsearchClient esClient = mock(ElasticsearchClient.class);
+    private SuggestionService suggestions;
+
+    @BeforeEach
+    void setUp() {
+        suggestions = suggestions(100, false);
+    }
+
+    @Test
+    void matchesPrefixesOfEveryWord() {
+        suggestions.recordProduct("Running  Shoes Pro");
+
+        assertThat(suggestions.suggest("run", null)).containsExactly("Running Shoes Pro");
+        assertThat(suggestions.suggest("SHO", null)).containsExactly("Running Shoes Pro");
+        assertThat(suggestions.suggest("shoes p", null)).containsExactly("Running Shoes Pro");
+        assertThat(suggestions.suggest("unning", null)).isEmpty();
+    }
+
+    @Test
+    void ordersByPopularityThenLength() {
+        suggestions.recordProduct("Shoe Rack Deluxe");
+        suggestions.recordProduct("Shoe Rack");
+        suggestions.recordProduct("Shoe Polish");
+        suggestions.recordProduct("Shoe Polish");
+
+        assertThat(suggestions.suggest("shoe", null)).containsExactly("Shoe Polish", "Shoe Rack", "Shoe Rack Deluxe");
+    }
+
+    @Test
+    void limitsToRequestedSize() {
+        suggestions.recordProduct("Yoga Mat");
+        suggestions.recordProduct("Yoga Block");
+        suggestions.recordProduct("Yoga Strap");
+
+        assertThat(suggestions.suggest("yoga", 2)).hasSize(2);
+        assertThat(suggestions.suggest("yoga", 50)).hasSize(3);
+    }
+
+    @Test
+    void rejectsSizesBelowOne() {
+        suggestions.recordProduct("Yoga Mat");
+
+        assertThatThrownBy(() -> suggestions.suggest("yoga", 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> suggestions.suggest("yoga", -1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void blankPrefixReturnsNothing() {
+        suggestions.recordProduct("Yoga Mat");
+
+        assertThat(suggestions.suggest("  ", null)).isEmpty();
+        assertThat(suggestions.suggest(null, null)).isEmpty();
+    }
+
+    @Test
+    void newPhrasesInvalidateCachedPrefixes() {
+        assertThat(suggestions.suggest("ke", null)).isEmpty();
+
+        suggestions.recordProduct("Kettlebell");
+
+        assertThat(suggestions.suggest("ke", null)).containsExactly("Kettlebell");
+    }
+
+    @Test
+    void trimDropsLeastPopularPhrases() {
+        suggestions = suggestions(10, false);
+        for (int i = 0; i < 5; i++) {
+            suggestions.recordProduct("Espresso Machine");
+        }
+        for (int i = 0; i < 20; i++) {
+            suggestions.recordProduct("Gadget " + i);
+        }
+
+        assertThat(suggestions.stats().phrases()).isLessThanOrEqualTo(10);
+        assertThat(suggestions.suggest("espresso", null)).containsExactly("Espresso Machine");
+    }
+
+    @Test
+    void queriesAreSuggestedOnlyOnceTheyArePopular() {
+        suggestions.recordQuery("gift for a runner");
+        suggestions.recordQuery("Gift for a  runner");
+        assertThat(suggestions.suggest("gift", null)).isEmpty();
+
+        suggestions.recordQuery("gift for a runner");
+
+        assertThat(suggestions.suggest("gift", null)).containsExactly("gift for a runner");
+    }
+
+    @Test
+    void admittedQueriesKeepTheirCountAsWeight() {
+        suggestions.recordProduct("Gift Card");
+        suggestions.recordProduct("Gift Card");
+        for (int i = 0; i < 3; i++) {
+            suggestions.recordQuery("gift wrap");
+        }
+
+        assertThat(suggestions.suggest("gift", null)).containsExactly("gift wrap", "Gift Card");
+    }
+
+    @Test
+    void queriesMatchingKnownPhrasesRaiseTheirWeight() {
+        suggestions.recordProduct("Trail Shoes");
+        suggestions.recordProduct("Trail Mix Large");
+        suggestions.recordQuery("trail mix large");
+
+        assertThat(suggestions.suggest("trail", null)).containsExactly("Trail Mix Large", "Trail Shoes");
+    }
+
+    @Test
+    void fallsBackOnlyWhenDictionaryHasFewerThanRequested() throws IOException {
+        suggestions = suggestions(100, true);
+        indexReturns("Yoga Wheel");
+        suggestions.recordProduct("Yoga Mat");
+        suggestions.recordProduct("Yoga Block");
+
+        assertThat(suggestions.suggest("yoga", 2)).containsExactly("Yoga Mat", "Yoga Block");
+        verifyNoInteractions(esClient);
+
+        assertThat(suggestions.suggest("yoga", 5)).containsExactly("Yoga Mat", "Yoga Block", "Yoga Wheel");
+        verify(esClient, times(1)).search(anySearch(), eq(Product.class));
+    }
+
+    @Test
+    void remembersPrefixesTheIndexCannotFill() throws IOException {
+        suggestions = suggestions(100, true);
+        indexReturns();
+
+        assertThat(suggestions.suggest("zz", null)).isEmpty();
+        assertThat(suggestions.suggest("zz", null)).isEmpty();
+        assertThat(suggestions.suggest("zz", 3)).isEmpty();
+
+        verify(esClient, times(1)).search(anySearch(), eq(Product.class));
+    }
+
+    @Test
+    void shortPrefixesDoNotFallBack() {
+        suggestions = suggestions(100, true);
+
+        assertThat(suggestions.suggest("z", null)).isEmpty();
+
+        verifyNoInteractions(esClient);
+    }
+
+    private void indexReturns(String... names) throws IOException {
+        List<Hit<Product>> hits = new ArrayList<>();
+        for (String name : names) {
+            Product product = new Product(name, name, null, "Sports", 10, null);
+            hits.add(Hit.of(h -> h.index(ProductService.INDEX_NAME).id(name).source(product)));
+        }
+        SearchResponse<Product> response = SearchResponse.of(r -> r
+                .took(1)
+                .timedOut(false)
+                .shards(sh -> sh.total(1).successful(1).failed(0))
+                .hits(h -> h.hits(hits))
+        );
+        when(esClient.search(anySearch(), eq(Product.class))).thenReturn(response);
+    }
+
+    private static Function<SearchRequest.Builder, ObjectBuilder<SearchRequest>> anySearch() {
+        return any();
+    }
+
+    private SuggestionService suggestions(int maxPhrases, boolean fallback) {
+        SuggestionService service = new SuggestionService(esClient, AdaptiveConcurrencyLimiterTest.limiter(20),
+                new SearchMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(service, "maxSize", 10);
+        ReflectionTestUtils.setField(service, "maxPhrases", maxPhrases);
+        ReflectionTestUtils.setField(service, "maxWords", 8);
+        ReflectionTestUtils.setField(service, "scanLimit", 2000);
+        ReflectionTestUtils.setField(service, "cacheMaxSize", 100L);
+        ReflectionTestUtils.setField(service, "cacheTtlSeconds", 30L);
+        ReflectionTestUtils.setField(service, "fallbackEnabled", fallback);
+        ReflectionTestUtils.setField(service, "fallbackMinPrefix", 2);
+        ReflectionTestUtils.setField(service, "fallbackNegativeTtlSeconds", 300L);
+        ReflectionTestUtils.setField(service, "queryMinCount", 3L);
+        ReflectionTestUtils.setField(service, "queryCandidatesMaxSize", 100L);
+        ReflectionTestUtils.setField(service, "queryWindowMinutes", 60L);
+        service.init();
+        return service;
+    }
+}